@@ -1,14 +1,42 @@
 package com.universalcompressor;
 
+import com.universalcompressor.checkout.CheckoutEngine;
+import com.universalcompressor.codec.CodecRace;
+import com.universalcompressor.codec.CodecStreams;
+import com.universalcompressor.codec.ParallelBrotli;
+import com.universalcompressor.codec.SeekableZstd;
+import com.universalcompressor.codec.SeekableZstdChannel;
+import com.universalcompressor.codec.SeekableZstdReader;
+import com.universalcompressor.codec.SeekableZstdWriter;
+import com.universalcompressor.codec.SparseZstd;
+import com.universalcompressor.codec.Recompactor;
+import com.universalcompressor.codec.TieredZstd;
+import com.universalcompressor.codec.ZstdWindow;
+import com.universalcompressor.io.BufferPool;
+import com.universalcompressor.io.MappedInput;
+import com.universalcompressor.manifest.AssetManifest;
 import com.universalcompressor.model.CompressionResult;
+import com.universalcompressor.model.ManifestEntry;
+import com.universalcompressor.model.VerificationResult;
+import com.universalcompressor.server.CompressionServer;
+import com.universalcompressor.store.ChunkRecipe;
+import com.universalcompressor.store.ChunkStore;
+import com.universalcompressor.tune.CodecTuner;
+import com.universalcompressor.tune.MethodSelector;
+import com.universalcompressor.util.CompressionConfig;
 import com.universalcompressor.util.FileUtils;
+import com.universalcompressor.verify.ArchiveVerifier;
+import com.universalcompressor.watch.CompressionWatcher;
+import com.universalcompressor.watch.PrecompressCache;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.util.*;
+import java.util.stream.Collectors;
 import java.util.zip.*;
 
 // Apache Commons Compress
@@ -43,6 +71,7 @@ public class UniversalCompressor {
     // Constants for buffer sizes and thresholds
     private static final int BUFFER_SIZE = 8 * 1024 * 1024; // 8MB buffer size
     private static final long MMAP_THRESHOLD = 100 * 1024 * 1024; // 100MB threshold for memory mapping
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
     private static final int ZSTD_LEVEL = 22;  // Max compression level for Zstandard
     private static final int BROTLI_QUALITY = 11;  // Max quality for Brotli
     private static final int BROTLI_WINDOW = 24;   // Window size for Brotli (16MB)
@@ -76,6 +105,195 @@ public class UniversalCompressor {
     }
    
     public static void main(String[] args) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+            logger.debug("Buffer pool: {}", BufferPool.shared().getStats())));
+
+        if (args.length >= 2 && "verify".equalsIgnoreCase(args[0])) {
+            try {
+                System.exit(verifyArchives(Arrays.copyOfRange(args, 1, args.length)));
+            } catch (Exception e) {
+                System.err.println("Error: " + e.getMessage());
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+
+        if (args.length >= 5 && "extract".equalsIgnoreCase(args[0])) {
+            try {
+                extractRange(new File(args[1]), Long.parseLong(args[2]), Long.parseLong(args[3]), new File(args[4]));
+                System.exit(0);
+            } catch (Exception e) {
+                System.err.println("Error: " + e.getMessage());
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+
+        if (args.length >= 2 && "recompact".equalsIgnoreCase(args[0])) {
+            try {
+                System.exit(recompactArchives(Arrays.copyOfRange(args, 1, args.length)));
+            } catch (Exception e) {
+                System.err.println("Error: " + e.getMessage());
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+
+        if (args.length >= 3 && "manifest-update".equalsIgnoreCase(args[0])) {
+            try {
+                updateManifest(new File(args[1]), new File(args[2]));
+                System.exit(0);
+            } catch (Exception e) {
+                System.err.println("Error: " + e.getMessage());
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+
+        if (args.length >= 2 && "manifest-stale".equalsIgnoreCase(args[0])) {
+            try {
+                printStaleEntries(new File(args[1]));
+                System.exit(0);
+            } catch (Exception e) {
+                System.err.println("Error: " + e.getMessage());
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+
+        if (args.length >= 1 && "checkout".equalsIgnoreCase(args[0])) {
+            try {
+                boolean ok = checkoutManifest(new File(args.length >= 2 ? args[1] : AssetManifest.DEFAULT_FILE));
+                System.exit(ok ? 0 : 1);
+            } catch (Exception e) {
+                System.err.println("Error: " + e.getMessage());
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+
+        if (args.length >= 1 && "watch".equalsIgnoreCase(args[0])) {
+            CompressionConfig config = CompressionConfig.get();
+            Path root = Paths.get(args.length >= 2 ? args[1] : config.getString("watch.root", "Content"));
+            try (CompressionWatcher watcher = new CompressionWatcher(root, PrecompressCache.fromConfig(config), config)) {
+                watcher.run();
+                System.exit(0);
+            } catch (Exception e) {
+                System.err.println("Error: " + e.getMessage());
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+
+        if (args.length >= 1 && "serve".equalsIgnoreCase(args[0])) {
+            try {
+                CompressionConfig config = CompressionConfig.get();
+                int port = args.length >= 3 && "--port".equals(args[1])
+                    ? Integer.parseInt(args[2]) : (int) config.getLong("server.port", CompressionServer.DEFAULT_PORT);
+                CompressionServer server = new CompressionServer(config, port);
+                Runtime.getRuntime().addShutdownHook(new Thread(server::close, "server-shutdown"));
+                server.start();
+                Thread.currentThread().join();
+            } catch (Exception e) {
+                System.err.println("Error: " + e.getMessage());
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+
+        if (args.length >= 1 && "tune".equalsIgnoreCase(args[0])) {
+            try {
+                CompressionConfig config = CompressionConfig.get();
+                double target = config.getDouble("tune.target_compress_mbps", 20);
+                boolean dryRun = false;
+                for (int i = 1; i < args.length; i++) {
+                    if ("--target-mbps".equals(args[i]) && i + 1 < args.length) {
+                        target = Double.parseDouble(args[++i]);
+                    } else if ("--dry-run".equals(args[i])) {
+                        dryRun = true;
+                    }
+                }
+                tuneCodecs(config, target, dryRun);
+                System.exit(0);
+            } catch (Exception e) {
+                System.err.println("Error: " + e.getMessage());
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+
+        if (args.length >= 2 && "method-for".equalsIgnoreCase(args[0])) {
+            // The pre-commit hook asks here so that it picks the same method as the watcher.
+            // Prints one method per path, in order; "--list <file>" reads the paths from a file.
+            try {
+                MethodSelector selector = new MethodSelector(CompressionConfig.get());
+                Path repoRoot = FileUtils.repositoryRoot();
+                List<String> paths = args.length >= 3 && "--list".equals(args[1])
+                    ? Files.readAllLines(Paths.get(args[2]))
+                    : Arrays.asList(args).subList(1, args.length);
+                for (String path : paths) {
+                    File file = new File(path);
+                    System.out.println(selector.methodFor(
+                        repoRoot.relativize(file.toPath().toAbsolutePath().normalize()), file.length()));
+                }
+                System.exit(0);
+            } catch (Exception e) {
+                System.err.println("Error: " + e.getMessage());
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+
+        if (args.length >= 3 && "cache-fetch".equalsIgnoreCase(args[0]) && "--list".equals(args[1])) {
+            // Batch form for the hook: reads "source|destination|method" lines and prints
+            // the lines that were served from the cache; the rest must be compressed
+            try {
+                PrecompressCache cache = PrecompressCache.fromConfig(CompressionConfig.get());
+                for (String line : Files.readAllLines(Paths.get(args[2]))) {
+                    String[] job = line.split("\\|", 3);
+                    try {
+                        if (job.length == 3 && cache.fetch(new File(job[0]), job[2], new File(job[1]))) {
+                            System.out.println(line);
+                        }
+                    } catch (IOException e) {
+                        System.err.println("Error: " + job[0] + ": " + e.getMessage());
+                    }
+                }
+                System.exit(0);
+            } catch (Exception e) {
+                System.err.println("Error: " + e.getMessage());
+                System.exit(2);
+            }
+        }
+
+        if (args.length >= 3 && "cache-fetch".equalsIgnoreCase(args[0])) {
+            // Exit code 2 tells the hook to fall back to inline compression
+            try {
+                String method = args.length >= 4 ? args[3] : "zstd";
+                boolean hit = PrecompressCache.fromConfig(CompressionConfig.get())
+                    .fetch(new File(args[1]), method, new File(args[2]));
+                System.exit(hit ? 0 : 2);
+            } catch (Exception e) {
+                System.err.println("Error: " + e.getMessage());
+                System.exit(2);
+            }
+        }
+
+        if (args.length >= 3 && ("store-put".equalsIgnoreCase(args[0]) || "store-get".equalsIgnoreCase(args[0]))) {
+            try (ChunkStore store = openChunkStore()) {
+                if ("store-put".equalsIgnoreCase(args[0])) {
+                    store.put(new File(args[1]), new File(args[2]));
+                } else {
+                    store.get(new File(args[1]), new File(args[2]));
+                }
+                System.exit(0);
+            } catch (Exception e) {
+                System.err.println("Error: " + e.getMessage());
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+
         if (args.length >= 3) {
             // Command-line mode
             String command = args[0].toLowerCase();
@@ -84,7 +302,8 @@ public class UniversalCompressor {
             
             try {
                 if ("compress".equals(command)) {
-                    CompressionResult result = compressFile(inputFile, outputFile, "zstd");
+                    String method = args.length >= 4 ? args[3] : "zstd";
+                    CompressionResult result = compressFile(inputFile, outputFile, method);
                     if (!result.isSuccess()) {
                         System.err.println("Compression failed");
                         System.exit(1);
@@ -194,6 +413,8 @@ public class UniversalCompressor {
                 outputPath = inputPath.substring(0, inputPath.length() - 4);
             } else if (inputPath.endsWith(".gz") || inputPath.endsWith(".br") || inputPath.endsWith(".zst")) {
                 outputPath = inputPath.substring(0, inputPath.length() - 3);
+            } else if (inputPath.endsWith(SparseZstd.EXTENSION)) {
+                outputPath = inputPath.substring(0, inputPath.length() - SparseZstd.EXTENSION.length());
             }
             
             // If we couldn't determine the output path, append .decompressed
@@ -225,7 +446,229 @@ public class UniversalCompressor {
         }
     }
     
-    private static boolean decompressAutoDetect(File inputFile, File outputFile) {
+    /**
+     * Verifies archives without writing any output.
+     * Usage: verify [--threads N] <file|directory>...
+     * @return Process exit code: 0 if every archive is intact, 1 otherwise
+     */
+    private static int verifyArchives(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("--threads".equals(args[i]) && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                paths.add(args[i]);
+            }
+        }
+
+        List<File> archives = ArchiveVerifier.collectArchives(paths);
+        long startTime = System.currentTimeMillis();
+        List<VerificationResult> results = new ArchiveVerifier(threads).verifyAll(archives);
+
+        int failed = 0;
+        long totalCompressed = 0;
+        long totalDecoded = 0;
+        for (VerificationResult result : results) {
+            totalCompressed += result.getCompressedSize();
+            totalDecoded += result.getDecodedSize();
+            if (!result.isSuccess()) {
+                failed++;
+                System.err.println("FAILED " + result.getFile().getPath() + ": " + result.getErrorMessage());
+            }
+        }
+
+        long duration = System.currentTimeMillis() - startTime;
+        logger.info("Verified {} archives ({} compressed, {} decoded) in {} ms: {} ok, {} failed",
+            results.size(), FileUtils.formatFileSize(totalCompressed), FileUtils.formatFileSize(totalDecoded),
+            duration, results.size() - failed, failed);
+
+        return failed == 0 ? 0 : 1;
+    }
+
+    /**
+     * Re-encodes fast-tier archives at the target level, replacing only files that get smaller.
+     * Usage: recompact [--threads N] [--memory MB] [--level L] <file|directory>...
+     * @return Process exit code: 0 if no file failed, 1 otherwise
+     */
+    private static int recompactArchives(String[] args) throws Exception {
+        CompressionConfig config = CompressionConfig.get();
+        int threads = (int) config.getLong("tiering.max_threads", 0);
+        int memoryMb = (int) config.getLong("tiering.max_memory_mb", 4096);
+        int level = (int) config.getLong("tiering.target_level", ZSTD_LEVEL);
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("--threads".equals(args[i]) && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if ("--memory".equals(args[i]) && i + 1 < args.length) {
+                memoryMb = Integer.parseInt(args[++i]);
+            } else if ("--level".equals(args[i]) && i + 1 < args.length) {
+                level = Integer.parseInt(args[++i]);
+            } else {
+                paths.add(args[i]);
+            }
+        }
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+
+        List<File> candidates = Recompactor.selectFastTier(ArchiveVerifier.collectArchives(paths));
+        long startTime = System.currentTimeMillis();
+        Recompactor.Summary summary = new Recompactor(level, threads, memoryMb).recompactAll(candidates);
+
+        logger.info("Recompacted {} fast-tier archives at level {} in {} ms: {} replaced, {} kept, {} failed, {} saved",
+            candidates.size(), level, System.currentTimeMillis() - startTime, summary.getReplaced(),
+            summary.getKept(), summary.getFailed(), FileUtils.formatFileSize(summary.getBytesSaved()));
+        return summary.getFailed() == 0 ? 0 : 1;
+    }
+
+    /**
+     * Adds or replaces manifest entries from a list of "original|compressed|method" lines,
+     * the format of the legacy .compressed_files list. Paths are relative to the directory
+     * holding the manifest; originals are hashed in parallel.
+     * Usage: manifest-update <manifest> <list>
+     */
+    private static void updateManifest(File manifestFile, File listFile) throws IOException {
+        File root = manifestFile.getAbsoluteFile().getParentFile();
+        Map<String, String[]> updates = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(listFile.toPath())) {
+            String[] fields = line.trim().split("\\|");
+            if (fields.length >= 2 && !fields[0].isEmpty()) {
+                updates.put(fields[0], fields); // a later line for the same path wins
+            }
+        }
+
+        List<ManifestEntry> entries;
+        try {
+            entries = updates.values().parallelStream().map(fields -> {
+                File original = new File(root, fields[0]);
+                File compressed = new File(root, fields[1]);
+                String method = fields.length >= 3 ? fields[2] : "";
+                try {
+                    if (!original.isFile()) {
+                        logger.warn("{} is missing; it will be restored on the next checkout", fields[0]);
+                        return new ManifestEntry(fields[0], fields[1], method, recordedOriginalSize(compressed),
+                            compressed.length(), null, 0);
+                    }
+                    return new ManifestEntry(fields[0], fields[1], method, original.length(), compressed.length(),
+                        FileUtils.sha256(original), original.lastModified());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        try (AssetManifest manifest = AssetManifest.open(manifestFile).update(entries, Collections.emptyList())) {
+            logger.info("Updated {} entries in {} ({} total)", entries.size(), manifestFile.getName(), manifest.size());
+        }
+    }
+
+    /**
+     * Reads the original size from a compressed file's own metadata, where the format
+     * records it exactly. Only the seekable format's seek table does; streams from the
+     * other codecs leave it unknown rather than guessed.
+     * @return The size, or ManifestEntry.UNKNOWN_SIZE
+     */
+    private static long recordedOriginalSize(File compressed) {
+        try (FileChannel channel = FileChannel.open(compressed.toPath(), StandardOpenOption.READ)) {
+            if (SeekableZstd.isSeekable(channel)) {
+                return SeekableZstd.readSeekTable(channel).getDecompressedSize();
+            }
+        } catch (IOException e) {
+            logger.debug("No size recorded in {}: {}", compressed, e.getMessage());
+        }
+        return ManifestEntry.UNKNOWN_SIZE;
+    }
+
+    /**
+     * Prints the "original|compressed|method" line of every manifest entry whose working
+     * file is missing or out of date. Nothing is decompressed.
+     * Usage: manifest-stale <manifest>
+     */
+    private static void printStaleEntries(File manifestFile) throws IOException {
+        File root = manifestFile.getAbsoluteFile().getParentFile();
+        List<ManifestEntry> stale;
+        try (AssetManifest manifest = AssetManifest.open(manifestFile)) {
+            stale = manifest.entries().parallelStream().filter(entry -> {
+                try {
+                    return !AssetManifest.isUpToDate(new File(root, entry.getPath()), entry);
+                } catch (IOException e) {
+                    return true;
+                }
+            }).collect(Collectors.toList());
+        }
+        for (ManifestEntry entry : stale) {
+            System.out.println(entry.getPath() + "|" + entry.getCompressedPath() + "|" + entry.getMethod());
+        }
+    }
+
+    /**
+     * Restores the working files of all manifest entries that are missing or out of date.
+     * Identical assets are decompressed once and shared by reflink, hard link or copy.
+     * Usage: checkout [manifest]
+     * @return true if every entry was restored
+     */
+    private static boolean checkoutManifest(File manifestFile) throws IOException {
+        File root = manifestFile.getAbsoluteFile().getParentFile();
+        List<ManifestEntry> entries;
+        try (AssetManifest manifest = AssetManifest.open(manifestFile)) {
+            entries = manifest.entries();
+        }
+        CheckoutEngine.Summary summary = new CheckoutEngine(root, CompressionConfig.get()).checkout(entries);
+        logger.info("Checkout complete: {}", summary);
+        return summary.getFailed() == 0;
+    }
+
+    /**
+     * Benchmarks codecs and levels on samples of the repository's assets and writes the
+     * best choice per file pattern to auto_detect.patterns in the configuration.
+     * Usage: tune [--target-mbps N] [--dry-run]
+     * @param targetCompressMbps Minimum compression throughput per core in MB/s
+     * @param dryRun Print the results without changing the configuration
+     */
+    private static void tuneCodecs(CompressionConfig config, double targetCompressMbps, boolean dryRun) throws IOException {
+        CodecTuner tuner = new CodecTuner(FileUtils.repositoryRoot(), config);
+        double minDecompressMbps = config.getDouble("tune.min_decompress_mbps", 100);
+        List<CodecTuner.PatternResult> results = tuner.tune(targetCompressMbps, minDecompressMbps);
+
+        for (CodecTuner.PatternResult result : results) {
+            System.out.printf("%n%s (%d files, %s sampled)%n", result.getPattern(), result.getSampleCount(),
+                FileUtils.formatFileSize(result.getSampleBytes()));
+            System.out.printf("     %-10s %7s %12s %12s%n", "codec", "ratio", "comp MB/s", "decomp MB/s");
+            List<CodecTuner.Measurement> sorted = new ArrayList<>(result.getMeasurements());
+            sorted.sort(Comparator.comparingDouble(CodecTuner.Measurement::getRatio).reversed());
+            for (CodecTuner.Measurement m : sorted) {
+                // '>' marks the choice, '*' the rest of the Pareto front
+                String mark = m == result.getChoice() ? " >" : m.isParetoOptimal() ? " *" : "  ";
+                System.out.printf("%s   %-10s %7.2f %12.1f %12.1f%n", mark, m.getSpec(), m.getRatio(),
+                    m.getCompressMbps(), m.getDecompressMbps());
+            }
+        }
+        System.out.printf("%nThroughput is per core with all %d cores busy; target %.0f MB/s compression, %.0f MB/s decompression%n",
+            Runtime.getRuntime().availableProcessors(), targetCompressMbps, minDecompressMbps);
+
+        if (results.isEmpty()) {
+            logger.warn("No files matched the configured patterns; configuration left unchanged");
+        } else if (!dryRun) {
+            tuner.writeRecommendations(results);
+        }
+    }
+
+    /**
+     * Opens the shared chunk store configured under "dedup" in the configuration.
+     * Usage: store-put <input> <recipe> | store-get <recipe> <output>
+     */
+    private static ChunkStore openChunkStore() throws IOException {
+        return ChunkStore.fromConfig(FileUtils.repositoryRoot().toFile(), CompressionConfig.get());
+    }
+
+    /**
+     * Decompresses a file, detecting the format from its extension or magic bytes.
+     * @return true if the file was decompressed
+     */
+    public static boolean decompressAutoDetect(File inputFile, File outputFile) {
         try {
             // First, try to detect by file extension
             String name = inputFile.getName().toLowerCase();
@@ -237,10 +680,15 @@ public class UniversalCompressor {
                 return decompressXZ(inputFile, outputFile);
             } else if (name.endsWith(".7z")) {
                 return decompress7z(inputFile, outputFile);
-            } else if (name.endsWith(".zst") || name.endsWith(".zstd")) {
-                return decompressZstd(inputFile, outputFile);
+            } else if (name.endsWith(".zst") || name.endsWith(".zstd") || name.endsWith(SparseZstd.EXTENSION)) {
+                return decompressZstdVariant(inputFile, outputFile);
             } else if (name.endsWith(".br")) {
                 return decompressBrotli(inputFile, outputFile);
+            } else if (name.endsWith(ChunkRecipe.EXTENSION)) {
+                try (ChunkStore store = openChunkStore()) {
+                    store.get(inputFile, outputFile);
+                    return true;
+                }
             }
             
             // If extension detection fails, try magic number detection
@@ -251,9 +699,11 @@ public class UniversalCompressor {
                 }
             }
             
-            // Check for ZSTD magic number
-            if (header[0] == 0x28 && header[1] == (byte)0xB5 && header[2] == 0x2F && header[3] == (byte)0xFD) {
-                return decompressZstd(inputFile, outputFile);
+            // Check for ZSTD magic number, a skippable frame such as the tier tag, or the sparse container
+            if ((header[0] == 0x28 && header[1] == (byte)0xB5 && header[2] == 0x2F && header[3] == (byte)0xFD)
+                    || ((header[0] & 0xF0) == 0x50 && header[1] == 0x2A && header[2] == 0x4D && header[3] == 0x18)
+                    || (header[0] == 'U' && header[1] == 'C' && header[2] == 'S' && header[3] == 'P')) {
+                return decompressZstdVariant(inputFile, outputFile);
             }
             // Check for GZIP magic number
             else if (header[0] == 0x1F && header[1] == (byte)0x8B) {
@@ -267,6 +717,10 @@ public class UniversalCompressor {
             else if (header[0] == (byte)0xFD && header[1] == '7' && header[2] == 'z' && header[3] == 'X' && header[4] == 'Z') {
                 return decompressXZ(inputFile, outputFile);
             }
+            // Check for the block-parallel Brotli container
+            else if (header[0] == 'U' && header[1] == 'C' && header[2] == 'B' && header[3] == 'R') {
+                return decompressBrotli(inputFile, outputFile);
+            }
             // Check for Brotli magic number (first 6 bytes of RFC 7932 format)
             else if (header[0] == 0xCE && header[1] == (byte)0xB2 && header[2] == (byte)0xCF && 
                     (header[3] & 0x1F) == 0x01) {  // Last nibble is window size
@@ -286,9 +740,36 @@ public class UniversalCompressor {
         }
     }
     
+    /**
+     * Decompresses any of the zstd-based formats: sparse container, seekable or plain.
+     */
+    private static boolean decompressZstdVariant(File inputFile, File outputFile) throws IOException {
+        if (SparseZstd.isSparse(inputFile)) {
+            return decompressSparseZstd(inputFile, outputFile);
+        }
+        return SeekableZstdReader.isSeekable(inputFile)
+            ? decompressSeekableZstd(inputFile, outputFile)
+            : decompressZstd(inputFile, outputFile);
+    }
+
+    private static boolean decompressSparseZstd(File inputFile, File outputFile) {
+        long startTime = System.currentTimeMillis();
+        try {
+            SparseZstd.decompress(inputFile, outputFile);
+            logger.info("Sparse ZSTD decompression completed in {} ms ({} bytes)",
+                System.currentTimeMillis() - startTime, outputFile.length());
+            return true;
+        } catch (IOException e) {
+            logger.error("Sparse ZSTD decompression of {} failed: {}", inputFile.getAbsolutePath(), e.getMessage());
+            outputFile.delete();
+            return false;
+        }
+    }
+
     private static void compressWithMaxGZIP(File inputFile, File outputFile) throws IOException {
         try (FileInputStream fis = new FileInputStream(inputFile);
-             FileOutputStream fos = new FileOutputStream(outputFile)) {
+             FileOutputStream fos = new FileOutputStream(outputFile);
+             BufferPool.Lease<byte[]> lease = BufferPool.shared().array(BUFFER_SIZE)) {
             
             // Create a GZIP output stream with maximum compression level
             GZIPOutputStream gzipOS = new GZIPOutputStream(fos) {
@@ -297,7 +778,7 @@ public class UniversalCompressor {
                 }
             };
             
-            byte[] buffer = new byte[1024];
+            byte[] buffer = lease.get();
             int len;
             while ((len = fis.read(buffer)) != -1) {
                 gzipOS.write(buffer, 0, len);
@@ -312,18 +793,24 @@ public class UniversalCompressor {
             // Auto-detect best method based on file size and type
             long fileSize = inputFile.length();
             String fileName = inputFile.getName().toLowerCase();
+            CompressionConfig config = CompressionConfig.get();
             
+            // Codecs chosen per pattern by the tune command come first
+            String tuned = CodecTuner.recommendedMethod(config, inputFile.toPath().normalize());
+            if (tuned != null) {
+                return compressFile(inputFile, outputFile, tuned);
+            }
             // For text-based files, prefer Brotli
-            if (fileName.endsWith(".txt") || fileName.endsWith(".json") || 
+            else if (fileName.endsWith(".txt") || fileName.endsWith(".json") || 
                 fileName.endsWith(".xml") || fileName.endsWith(".html")) {
                 return compressWithBrotli(inputFile, outputFile);
             }
             // For large files, prefer Zstandard
-            else if (fileSize > 50 * 1024 * 1024) { // > 50MB
+            else if (fileSize > config.getLong("auto_detect.large_file_mb", 50) * 1024 * 1024) {
                 return compressWithZstd(inputFile, outputFile);
             }
             // For medium files, use XZ or BZIP2
-            else if (fileSize > 10 * 1024 * 1024) { // 10-50MB
+            else if (fileSize > config.getLong("auto_detect.medium_file_mb", 10) * 1024 * 1024) {
                 return compressWithXZ(inputFile, outputFile);
             }
             // For small files, use GZIP
@@ -332,10 +819,31 @@ public class UniversalCompressor {
             }
         }
         
+        // An explicit level, as written by the tune command
+        int colon = method.indexOf(':');
+        if (colon > 0) {
+            return compressWithLevel(inputFile, outputFile, method.substring(0, colon).trim().toLowerCase(),
+                Integer.parseInt(method.substring(colon + 1).trim()));
+        }
+        
         // Use specified method if provided
         switch (method.toLowerCase()) {
             case "zstd":
+                // In tiered mode commits use the fast level; recompact raises it later
+                if (CompressionConfig.get().getBoolean("tiering.enabled", false)) {
+                    return compressWithFastZstd(inputFile, outputFile);
+                }
                 return compressWithZstd(inputFile, outputFile);
+            case "zstd-fast":
+                return compressWithFastZstd(inputFile, outputFile);
+            case "zstd-sparse":
+            case "sparse":
+                return compressWithSparseZstd(inputFile, outputFile);
+            case "zstd-seekable":
+            case "seekable":
+                return compressWithSeekableZstd(inputFile, outputFile);
+            case ChunkStore.METHOD:
+                return storeInChunks(inputFile, outputFile);
             case "brotli":
             case "br":
                 return compressWithBrotli(inputFile, outputFile);
@@ -353,12 +861,160 @@ public class UniversalCompressor {
         }
     }
     
+    /**
+     * Compresses with an explicit codec and level. Brotli goes into the parallel container
+     * so that its output is recognised by magic number on decompression.
+     * Usage: compress <input> <output> zstd:9
+     */
+    private static CompressionResult compressWithLevel(File inputFile, File outputFile, String codec, int level) throws IOException {
+        long startTime = System.currentTimeMillis();
+        long inputSize = inputFile.length();
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        if ("brotli".equals(codec)) {
+            ParallelBrotli.compress(inputFile, outputFile, level, BROTLI_WINDOW, threads);
+        } else if (CodecStreams.methodOf(codec) == null) {
+            throw new IllegalArgumentException("Unknown codec: " + codec);
+        } else {
+            try (InputStream in = new FileInputStream(inputFile);
+                 OutputStream out = openLevelEncoder(outputFile, codec, level, inputSize, threads);
+                 BufferPool.Lease<byte[]> lease = BufferPool.shared().array(BUFFER_SIZE)) {
+                byte[] buffer = lease.get();
+                int len;
+                while ((len = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, len);
+                }
+            }
+        }
+
+        long outputSize = outputFile.length();
+        long duration = System.currentTimeMillis() - startTime;
+        logger.info("{} compression at level {} completed in {} ms ({} -> {} bytes)",
+            codec.toUpperCase(), level, duration, inputSize, outputSize);
+        return new CompressionResult(inputSize, outputSize, codec.toUpperCase() + " level " + level);
+    }
+
+    private static OutputStream openLevelEncoder(File outputFile, String codec, int level, long inputSize,
+                                                 int threads) throws IOException {
+        OutputStream fos = new BufferedOutputStream(new FileOutputStream(outputFile), BUFFER_SIZE);
+        if (!"zstd".equals(codec)) {
+            return CodecStreams.openCompressing(fos, codec, level);
+        }
+        // Window and workers sized to the input, as for the default zstd path
+        ZstdOutputStream zstdOS = new ZstdOutputStream(fos);
+        zstdOS.setChecksum(true);
+        ZstdWindow.configure(zstdOS, inputSize, level, threads);
+        return zstdOS;
+    }
+
+    /**
+     * Compresses with constant runs recorded as descriptors, so that neither the encoder
+     * nor the decoder spends time on them and zero runs are restored as sparse holes.
+     * In tiered mode the dense data uses the fast level and the container is tagged for
+     * recompact, as with plain zstd.
+     */
+    private static CompressionResult compressWithSparseZstd(File inputFile, File outputFile) throws IOException {
+        long startTime = System.currentTimeMillis();
+        long inputSize = inputFile.length();
+        CompressionConfig config = CompressionConfig.get();
+        boolean tiered = config.getBoolean("tiering.enabled", false);
+        int level = tiered
+            ? (int) config.getLong("tiering.fast_level", TieredZstd.DEFAULT_FAST_LEVEL)
+            : ZSTD_LEVEL;
+
+        long outputSize = SparseZstd.compress(inputFile, outputFile, level,
+            tiered ? TieredZstd.TIER_FAST : SparseZstd.UNTIERED,
+            Runtime.getRuntime().availableProcessors(),
+            config.getLong("sparse.min_run_kb", SparseZstd.DEFAULT_MIN_RUN / 1024) * 1024);
+
+        long duration = System.currentTimeMillis() - startTime;
+        logger.info("Sparse ZSTD compression completed in {} ms ({} -> {} bytes)", duration, inputSize, outputSize);
+        return new CompressionResult(true, "", inputSize, outputSize);
+    }
+
+    /**
+     * Compresses at the fast commit-time level and tags the output as fast tier, so that
+     * the recompact command can re-encode it at the high level later.
+     */
+    private static CompressionResult compressWithFastZstd(File inputFile, File outputFile) throws IOException {
+        long startTime = System.currentTimeMillis();
+        long inputSize = inputFile.length();
+        int level = (int) CompressionConfig.get().getLong("tiering.fast_level", TieredZstd.DEFAULT_FAST_LEVEL);
+
+        long outputSize = TieredZstd.compress(inputFile, outputFile, level, TieredZstd.TIER_FAST,
+            Runtime.getRuntime().availableProcessors());
+
+        long duration = System.currentTimeMillis() - startTime;
+        logger.info("Fast-tier ZSTD compression at level {} completed in {} ms ({} -> {} bytes)",
+            level, duration, inputSize, outputSize);
+        return new CompressionResult(true, "", inputSize, outputSize);
+    }
+
+    /**
+     * Compresses into independent zstd frames followed by a seek table, so that
+     * {@link SeekableZstdChannel} can read any byte range without decoding the whole file.
+     * Progress is journaled, so an interrupted run resumes when the command is repeated.
+     */
+    private static CompressionResult compressWithSeekableZstd(File inputFile, File outputFile) throws IOException {
+        long startTime = System.currentTimeMillis();
+        long inputSize = inputFile.length();
+
+        long outputSize = new SeekableZstdWriter(ZSTD_LEVEL, SeekableZstd.DEFAULT_BLOCK_SIZE,
+            Runtime.getRuntime().availableProcessors()).compress(inputFile, outputFile);
+
+        long duration = System.currentTimeMillis() - startTime;
+        logger.info("Seekable ZSTD compression completed in {} ms ({} -> {} bytes)",
+            duration, inputSize, outputSize);
+        return new CompressionResult(true, "", inputSize, outputSize);
+    }
+
+    /**
+     * Stores the file in the shared chunk store; the output is the recipe listing its chunks.
+     */
+    private static CompressionResult storeInChunks(File inputFile, File recipeFile) throws IOException {
+        long startTime = System.currentTimeMillis();
+        long inputSize = inputFile.length();
+        try (ChunkStore store = openChunkStore()) {
+            store.put(inputFile, recipeFile);
+        }
+        logger.info("Chunk store write completed in {} ms ({} bytes)", System.currentTimeMillis() - startTime, inputSize);
+        return new CompressionResult(true, "", inputSize, recipeFile.length());
+    }
+
+    /**
+     * Copies a byte range of a seekable compressed file to the output, decoding only
+     * the frames that cover the range.
+     * Usage: extract <input.zst> <offset> <length> <output>
+     */
+    private static void extractRange(File inputFile, long offset, long length, File outputFile) throws IOException {
+        try (SeekableZstdChannel in = SeekableZstdChannel.open(inputFile.toPath());
+             FileChannel out = new FileOutputStream(outputFile).getChannel()) {
+            in.position(offset);
+            long remaining = Math.min(length, Math.max(0, in.size() - offset));
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(1, remaining)));
+            while (remaining > 0) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                int n = in.read(buffer);
+                if (n < 0) {
+                    break;
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                remaining -= n;
+            }
+        }
+    }
+
     private static CompressionResult compressWithZstd(File inputFile, File outputFile) throws IOException {
         try (FileInputStream fis = new FileInputStream(inputFile);
              FileOutputStream fos = new FileOutputStream(outputFile);
-             ZstdOutputStream zstdOS = new ZstdOutputStream(fos, ZSTD_LEVEL)) {
+             ZstdOutputStream zstdOS = new ZstdOutputStream(fos, ZSTD_LEVEL);
+             BufferPool.Lease<byte[]> lease = BufferPool.shared().array(BUFFER_SIZE)) {
             
-            byte[] buffer = new byte[8 * 1024 * 1024]; // 8MB buffer for better performance
+            byte[] buffer = lease.get(); // pooled 8MB buffer for better performance
             int bytesRead;
             long totalRead = 0;
             
@@ -383,9 +1039,10 @@ public class UniversalCompressor {
              BrotliOutputStream brotliOS = new BrotliOutputStream(fos, 
                  new org.brotli.enc.BrotliOutputStream.Parameters()
                      .setQuality(BROTLI_QUALITY)
-                     .setWindow(BROTLI_WINDOW))) {
+                     .setWindow(BROTLI_WINDOW));
+             BufferPool.Lease<byte[]> lease = BufferPool.shared().array(BUFFER_SIZE)) {
             
-            byte[] buffer = new byte[8 * 1024 * 1024]; // 8MB buffer
+            byte[] buffer = lease.get(); // pooled 8MB buffer
             int bytesRead;
             long totalRead = 0;
             
@@ -411,6 +1068,11 @@ public class UniversalCompressor {
         logger.debug("Starting GZIP compression of {} ({} bytes) to {}", 
             inputFile.getName(), inputSize, outputFile.getAbsolutePath());
         
+        // Large inputs are fed to the encoder straight from a memory mapping
+        if (inputSize > MMAP_THRESHOLD) {
+            return compressWithGZIPMapped(inputFile, outputFile);
+        }
+        
         try (FileChannel inChannel = new RandomAccessFile(inputFile, "r").getChannel();
              FileChannel outChannel = new RandomAccessFile(outputFile, "rw").getChannel();
              GZIPOutputStream gzipOS = new GZIPOutputStream(Channels.newOutputStream(outChannel)) {
@@ -419,35 +1081,18 @@ public class UniversalCompressor {
             
             long totalRead = 0;
             
-            // Use memory mapping for large files
-            if (inputSize > MMAP_THRESHOLD) {
-                long position = 0;
-                byte[] buffer = new byte[BUFFER_SIZE];
-                while (position < inputSize) {
-                    long size = Math.min(buffer.length, inputSize - position);
-                    ByteBuffer buf = inChannel.map(FileChannel.MapMode.READ_ONLY, position, size);
-                    byte[] data = new byte[(int) size];
-                    buf.get(data);
-                    gzipOS.write(data);
-                    position += size;
-                    totalRead += size;
-                    
-                    // Log progress for large files
-                    if (inputSize > 100 * 1024 * 1024 && totalRead % (50 * 1024 * 1024) == 0) {
-                        int percent = (int) ((position * 100) / inputSize);
-                        logger.debug("Compressed {} MB ({}%)", position / (1024 * 1024), percent);
-                    }
-                }
-            } else {
-                // For smaller files, use direct buffer
-                ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            // Use a pooled direct buffer; large inputs take the mapped path
+            try (BufferPool.Lease<ByteBuffer> bufferLease = BufferPool.shared().direct(BUFFER_SIZE);
+                 BufferPool.Lease<byte[]> dataLease = BufferPool.shared().array(BUFFER_SIZE)) {
+                ByteBuffer buffer = bufferLease.get();
+                byte[] data = dataLease.get();
                 while (inChannel.read(buffer) != -1) {
                     buffer.flip();
-                    byte[] data = new byte[buffer.remaining()];
-                    buffer.get(data);
-                    gzipOS.write(data);
+                    int length = buffer.remaining();
+                    buffer.get(data, 0, length);
+                    gzipOS.write(data, 0, length);
                     buffer.clear();
-                    totalRead += data.length;
+                    totalRead += length;
                 }
             }
             
@@ -476,6 +1121,129 @@ public class UniversalCompressor {
         }
     }
     
+    /**
+     * Deflates a large input straight from a memory mapping; the JDK's Deflater and CRC32
+     * both accept direct buffers, which GZIPOutputStream does not.
+     */
+    private static CompressionResult compressWithGZIPMapped(File inputFile, File outputFile) throws IOException {
+        long startTime = System.currentTimeMillis();
+        long inputSize = inputFile.length();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        CRC32 crc = new CRC32();
+        
+        try (FileChannel inChannel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+             FileChannel outChannel = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             MappedInput input = openMapped(inChannel);
+             BufferPool.Lease<byte[]> dataLease = BufferPool.shared().array(BUFFER_SIZE)) {
+            
+            byte[] data = dataLease.get();
+            writeFully(outChannel, ByteBuffer.wrap(GZIP_HEADER));
+            
+            ByteBuffer chunk;
+            while ((chunk = input.next(BUFFER_SIZE)) != null) {
+                int size = chunk.remaining();
+                crc.update(chunk.duplicate());
+                deflater.setInput(chunk);
+                while (!deflater.needsInput()) {
+                    int n = deflater.deflate(data, 0, BUFFER_SIZE);
+                    writeFully(outChannel, ByteBuffer.wrap(data, 0, n));
+                }
+                logMappedProgress(input, size);
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(data, 0, BUFFER_SIZE);
+                writeFully(outChannel, ByteBuffer.wrap(data, 0, n));
+            }
+            
+            ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putInt((int) crc.getValue()).putInt((int) inputSize).flip();
+            writeFully(outChannel, trailer);
+            
+            long outputSize = outChannel.size();
+            long duration = System.currentTimeMillis() - startTime;
+            logger.info("Mapped GZIP compression completed in {} ms ({} -> {} bytes)", duration, inputSize, outputSize);
+            return new CompressionResult(inputSize, outputSize, "GZIP");
+        } finally {
+            deflater.end();
+        }
+    }
+    
+    /**
+     * Compresses a large input with the zstd context reading direct slices of a memory
+     * mapping, using the same window and worker settings as the streaming path.
+     */
+    private static CompressionResult compressWithZstdMapped(File inputFile, File outputFile) throws IOException {
+        long startTime = System.currentTimeMillis();
+        long inputSize = inputFile.length();
+        
+        try (FileChannel inChannel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+             FileChannel outChannel = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             MappedInput input = openMapped(inChannel);
+             ZstdCompressCtx ctx = new ZstdCompressCtx();
+             BufferPool.Lease<ByteBuffer> outLease = BufferPool.shared().direct(BUFFER_SIZE)) {
+            
+            ctx.setChecksum(true);
+            ZstdWindow.configure(ctx, inputSize, ZSTD_LEVEL, Runtime.getRuntime().availableProcessors());
+            ByteBuffer out = outLease.get();
+            out.clear();
+            
+            ByteBuffer chunk;
+            while ((chunk = input.next(BUFFER_SIZE)) != null) {
+                int size = chunk.remaining();
+                while (chunk.hasRemaining()) {
+                    ctx.compressDirectByteBufferStream(out, chunk, EndDirective.CONTINUE);
+                    drainTo(out, outChannel);
+                }
+                logMappedProgress(input, size);
+            }
+            ByteBuffer empty = ByteBuffer.allocateDirect(0);
+            boolean done;
+            do {
+                done = ctx.compressDirectByteBufferStream(out, empty, EndDirective.END);
+                drainTo(out, outChannel);
+            } while (!done);
+            
+            long outputSize = outChannel.size();
+            long duration = System.currentTimeMillis() - startTime;
+            logger.info("Mapped ZSTD compression completed in {} ms ({} -> {} bytes)", duration, inputSize, outputSize);
+            return new CompressionResult(inputSize, outputSize, "ZSTD");
+        }
+    }
+    
+    /**
+     * Maps the input in large segments, sized by performance.mmap_segment_mb, with pages
+     * prefetched performance.read_ahead_kb ahead of the encoder.
+     */
+    private static MappedInput openMapped(FileChannel inChannel) throws IOException {
+        CompressionConfig config = CompressionConfig.get();
+        return new MappedInput(inChannel,
+            config.getLong("performance.mmap_segment_mb", MappedInput.DEFAULT_SEGMENT_SIZE >> 20) * 1024 * 1024,
+            config.getLong("performance.read_ahead_kb", 4096) * 1024);
+    }
+    
+    private static void logMappedProgress(MappedInput input, int chunkSize) {
+        long position = input.position();
+        long step = 256L * 1024 * 1024;
+        if (position / step != (position - chunkSize) / step) {
+            logger.debug("Compressed {} MB ({}%)", position / (1024 * 1024), position * 100 / input.size());
+        }
+    }
+    
+    private static void drainTo(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+    
     private static boolean decompressGZIP(File inputFile, File outputFile) {
         long startTime = System.currentTimeMillis();
         long inputSize = inputFile.length();
@@ -485,11 +1253,13 @@ public class UniversalCompressor {
             
         try (FileChannel inChannel = new RandomAccessFile(inputFile, "r").getChannel();
              GZIPInputStream gzipIS = new GZIPInputStream(Channels.newInputStream(inChannel));
-             FileChannel outChannel = new FileOutputStream(outputFile).getChannel()) {
+             FileChannel outChannel = new FileOutputStream(outputFile).getChannel();
+             BufferPool.Lease<ByteBuffer> bufferLease = BufferPool.shared().direct(BUFFER_SIZE);
+             BufferPool.Lease<byte[]> tempLease = BufferPool.shared().array(BUFFER_SIZE)) {
             
-            // Use direct buffer for better performance
-            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
-            byte[] tempBuffer = new byte[BUFFER_SIZE];
+            // Use pooled buffers for better performance
+            ByteBuffer buffer = bufferLease.get();
+            byte[] tempBuffer = tempLease.get();
             
             long totalRead = 0;
             int bytesRead;
@@ -541,12 +1311,15 @@ public class UniversalCompressor {
             inputFile.getName(), inputSize, outputFile.getAbsolutePath());
         
         try (FileChannel inChannel = new RandomAccessFile(inputFile, "r").getChannel();
-             ZstdInputStream zstdIS = new ZstdInputStream(Channels.newInputStream(inChannel));
-             FileChannel outChannel = new FileOutputStream(outputFile).getChannel()) {
+             ZstdInputStream zstdIS = ZstdWindow.allowWindow(
+                 new ZstdInputStream(Channels.newInputStream(inChannel)), inputFile, 0);
+             FileChannel outChannel = new FileOutputStream(outputFile).getChannel();
+             BufferPool.Lease<ByteBuffer> bufferLease = BufferPool.shared().direct(BUFFER_SIZE);
+             BufferPool.Lease<byte[]> tempLease = BufferPool.shared().array(BUFFER_SIZE)) {
             
-            // Use direct buffer for better performance
-            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
-            byte[] tempBuffer = new byte[BUFFER_SIZE];
+            // Use pooled buffers for better performance
+            ByteBuffer buffer = bufferLease.get();
+            byte[] tempBuffer = tempLease.get();
             
             long totalRead = 0;
             int bytesRead;
@@ -590,6 +1363,30 @@ public class UniversalCompressor {
         }
     }
     
+    /**
+     * Decompresses a seekable zstd file frame by frame with checkpoints. Unlike the
+     * streaming decoders, a failure keeps the partial output and its journal so that
+     * rerunning the same command resumes from the last durable frame.
+     */
+    private static boolean decompressSeekableZstd(File inputFile, File outputFile) {
+        long startTime = System.currentTimeMillis();
+
+        logger.debug("Starting seekable Zstandard decompression of {} ({} bytes) to {}",
+            inputFile.getName(), inputFile.length(), outputFile.getAbsolutePath());
+
+        try {
+            long outputSize = SeekableZstdReader.decompress(inputFile, outputFile);
+            long duration = System.currentTimeMillis() - startTime;
+            logger.info("Seekable ZSTD decompression completed in {} ms ({} bytes)", duration, outputSize);
+            return true;
+
+        } catch (Exception e) {
+            logger.error("Seekable ZSTD decompression of {} failed: {}. Rerun to resume from the last checkpoint.",
+                inputFile.getAbsolutePath(), e.getMessage(), e);
+            return false;
+        }
+    }
+
     private static CompressionResult compressWithZstd(File inputFile, File outputFile) throws IOException {
         long startTime = System.currentTimeMillis();
         long inputSize = inputFile.length();
@@ -597,48 +1394,34 @@ public class UniversalCompressor {
         logger.debug("Starting Zstandard compression of {} ({} bytes) to {}", 
             inputFile.getName(), inputSize, outputFile.getAbsolutePath());
         
+        // Large inputs are fed to the encoder straight from a memory mapping
+        if (inputSize > MMAP_THRESHOLD) {
+            return compressWithZstdMapped(inputFile, outputFile);
+        }
+        
         try (FileChannel inChannel = new RandomAccessFile(inputFile, "r").getChannel();
              FileChannel outChannel = new RandomAccessFile(outputFile, "rw").getChannel();
              ZstdOutputStream zstdOS = new ZstdOutputStream(Channels.newOutputStream(outChannel))) {
             
-            // Configure Zstd for maximum compression
+            // Configure Zstd for maximum compression, with the window, workers and overlap
+            // sized to the input so that repeats far apart in large caches are found
             zstdOS.setChecksum(true);
-            zstdOS.setLevel(ZSTD_LEVEL);  // Use constant for max compression level
-            zstdOS.setWorkers(Runtime.getRuntime().availableProcessors()); // Use all available cores
-            zstdOS.setOverlapLog(9); // Maximum overlap for better compression
-            zstdOS.setLong(9); // Enable long distance matching with max window size
+            ZstdWindow.configure(zstdOS, inputSize, ZSTD_LEVEL, Runtime.getRuntime().availableProcessors());
             
             long totalRead = 0;
             
-            // Use memory mapping for large files
-            if (inputSize > MMAP_THRESHOLD) {
-                long position = 0;
-                byte[] buffer = new byte[BUFFER_SIZE];
-                while (position < inputSize) {
-                    long size = Math.min(buffer.length, inputSize - position);
-                    ByteBuffer buf = inChannel.map(FileChannel.MapMode.READ_ONLY, position, size);
-                    byte[] data = new byte[(int) size];
-                    buf.get(data);
-                    zstdOS.write(data);
-                    position += size;
-                    totalRead += size;
-                    
-                    // Log progress for large files
-                    if (inputSize > 100 * 1024 * 1024 && totalRead % (50 * 1024 * 1024) == 0) {
-                        int percent = (int) ((position * 100) / inputSize);
-                        logger.debug("Compressed {} MB ({}%)", position / (1024 * 1024), percent);
-                    }
-                }
-            } else {
-                // For smaller files, use direct buffer
-                ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            // Use a pooled direct buffer; large inputs take the mapped path
+            try (BufferPool.Lease<ByteBuffer> bufferLease = BufferPool.shared().direct(BUFFER_SIZE);
+                 BufferPool.Lease<byte[]> dataLease = BufferPool.shared().array(BUFFER_SIZE)) {
+                ByteBuffer buffer = bufferLease.get();
+                byte[] data = dataLease.get();
                 while (inChannel.read(buffer) != -1) {
                     buffer.flip();
-                    byte[] data = new byte[buffer.remaining()];
-                    buffer.get(data);
-                    zstdOS.write(data);
+                    int length = buffer.remaining();
+                    buffer.get(data, 0, length);
+                    zstdOS.write(data, 0, length);
                     buffer.clear();
-                    totalRead += data.length;
+                    totalRead += length;
                 }
             }
             
@@ -675,9 +1458,22 @@ public class UniversalCompressor {
         logger.debug("Starting Brotli compression of {} ({} bytes) to {}", 
             inputFile.getName(), inputSize, outputFile.getAbsolutePath());
         
+        // Lower the quality for large inputs so they don't fall into the multi-minute q11 path
+        int quality = ParallelBrotli.qualityFor(inputSize, BROTLI_QUALITY);
+        
+        // Large inputs are split into independent blocks encoded on all cores
+        if (inputSize > ParallelBrotli.PARALLEL_THRESHOLD) {
+            long outputSize = ParallelBrotli.compress(inputFile, outputFile, quality, BROTLI_WINDOW,
+                Runtime.getRuntime().availableProcessors());
+            long duration = System.currentTimeMillis() - startTime;
+            logger.info("Parallel Brotli compression (quality {}) completed in {} ms ({} -> {} bytes)",
+                quality, duration, inputSize, outputSize);
+            return new CompressionResult(true, "", inputSize, outputSize);
+        }
+        
         // Configure Brotli for maximum compression
         Encoder.Parameters params = new Encoder.Parameters()
-            .setQuality(BROTLI_QUALITY)  // Use constant for quality (0-11)
+            .setQuality(quality)         // Adaptive quality (0-11), capped by BROTLI_QUALITY
             .setWindow(BROTLI_WINDOW)    // Use constant for window size (10-24)
             .setMode(Encoder.Mode.TEXT); // Optimize for text content
             
@@ -689,33 +1485,33 @@ public class UniversalCompressor {
             
             // Use memory mapping for large files
             if (inputSize > MMAP_THRESHOLD) {
-                long position = 0;
-                byte[] buffer = new byte[BUFFER_SIZE];
-                while (position < inputSize) {
-                    long size = Math.min(buffer.length, inputSize - position);
-                    ByteBuffer buf = inChannel.map(FileChannel.MapMode.READ_ONLY, position, size);
-                    byte[] data = new byte[(int) size];
-                    buf.get(data);
-                    brotliOS.write(data);
-                    position += size;
-                    totalRead += size;
-                    
-                    // Log progress for large files
-                    if (inputSize > 100 * 1024 * 1024 && totalRead % (50 * 1024 * 1024) == 0) {
-                        int percent = (int) ((position * 100) / inputSize);
-                        logger.debug("Compressed {} MB ({}%)", position / (1024 * 1024), percent);
+                // The Brotli encoder only accepts arrays, so slices of the mapping are copied once
+                try (MappedInput input = openMapped(inChannel);
+                     BufferPool.Lease<byte[]> dataLease = BufferPool.shared().array(BUFFER_SIZE)) {
+                    byte[] data = dataLease.get();
+                    ByteBuffer chunk;
+                    while ((chunk = input.next(BUFFER_SIZE)) != null) {
+                        int size = chunk.remaining();
+                        chunk.get(data, 0, size);
+                        brotliOS.write(data, 0, size);
+                        totalRead += size;
+                        logMappedProgress(input, size);
                     }
                 }
             } else {
-                // For smaller files, use direct buffer
-                ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
-                while (inChannel.read(buffer) != -1) {
-                    buffer.flip();
-                    byte[] data = new byte[buffer.remaining()];
-                    buffer.get(data);
-                    brotliOS.write(data);
-                    buffer.clear();
-                    totalRead += data.length;
+                // For smaller files, use a pooled direct buffer
+                try (BufferPool.Lease<ByteBuffer> bufferLease = BufferPool.shared().direct(BUFFER_SIZE);
+                     BufferPool.Lease<byte[]> dataLease = BufferPool.shared().array(BUFFER_SIZE)) {
+                    ByteBuffer buffer = bufferLease.get();
+                    byte[] data = dataLease.get();
+                    while (inChannel.read(buffer) != -1) {
+                        buffer.flip();
+                        int length = buffer.remaining();
+                        buffer.get(data, 0, length);
+                        brotliOS.write(data, 0, length);
+                        buffer.clear();
+                        totalRead += length;
+                    }
                 }
             }
             
@@ -752,13 +1548,34 @@ public class UniversalCompressor {
         logger.debug("Starting Brotli decompression of {} ({} bytes) to {}", 
             inputFile.getName(), inputSize, outputFile.getAbsolutePath());
         
+        // Block-parallel containers decode all blocks concurrently
+        if (ParallelBrotli.isParallelBrotli(inputFile)) {
+            try {
+                long outputSize = ParallelBrotli.decompress(inputFile, outputFile,
+                    Runtime.getRuntime().availableProcessors());
+                long duration = System.currentTimeMillis() - startTime;
+                logger.info("Parallel Brotli decompression completed in {} ms ({} bytes)", duration, outputSize);
+                return true;
+            } catch (Exception e) {
+                logger.error("Parallel Brotli decompression of {} failed: {}", 
+                    inputFile.getAbsolutePath(), e.getMessage(), e);
+                if (outputFile.exists() && !outputFile.delete()) {
+                    logger.warn("Failed to clean up partially decompressed file: {}", 
+                        outputFile.getAbsolutePath());
+                }
+                return false;
+            }
+        }
+        
         try (FileInputStream fis = new FileInputStream(inputFile);
              BrotliInputStream brotliIS = new BrotliInputStream(fis);
-             FileChannel outChannel = new FileOutputStream(outputFile).getChannel()) {
+             FileChannel outChannel = new FileOutputStream(outputFile).getChannel();
+             BufferPool.Lease<ByteBuffer> bufferLease = BufferPool.shared().direct(BUFFER_SIZE);
+             BufferPool.Lease<byte[]> tempLease = BufferPool.shared().array(BUFFER_SIZE)) {
             
-            // Use direct buffer for better performance
-            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
-            byte[] tempBuffer = new byte[BUFFER_SIZE];
+            // Use pooled buffers for better performance
+            ByteBuffer buffer = bufferLease.get();
+            byte[] tempBuffer = tempLease.get();
             
             long totalRead = 0;
             int bytesRead;
@@ -802,87 +1619,29 @@ public class UniversalCompressor {
         }
     }
     
-    private static CompressionResult compressWithCustomAlgorithm(File inputFile, File outputFile, double minCompressionRatio) {
+    /**
+     * Compresses a file with the candidate codecs in race.candidates concurrently and keeps
+     * the smallest output, provided it is at least the given ratio smaller than the input.
+     * @param minCompressionRatio Required reduction, e.g. 0.16 for 16%
+     * @return The result; unsuccessful if no candidate met the ratio
+     */
+    private static CompressionResult compressWithRatioGuarantee(File inputFile, File outputFile, double minCompressionRatio) {
+        List<String> candidates = CompressionConfig.get().getStringList("race.candidates");
         try {
-            // Read the entire file into memory
-            byte[] data = Files.readAllBytes(inputFile.toPath());
-            long originalSize = data.length;
-            
-            // Apply custom compression (this is a simplified example)
-            // In a real implementation, you would use a more sophisticated algorithm
-            byte[] compressed = compressData(data);
-            
-            // Write the compressed data to the output file
-            Files.write(outputFile.toPath(), compressed);
-            
-            long compressedSize = outputFile.length();
-            double actualRatio = 1 - (double) compressedSize / originalSize;
-            
-            if (actualRatio >= minCompressionRatio) {
-                return new CompressionResult(true, "", originalSize, compressedSize);
-            } else {
-                // If we still can't achieve the ratio, pad the file to meet the ratio
-                return padToMeetRatio(inputFile, outputFile, minCompressionRatio);
-            }
-            
-        } catch (Exception e) {
-            return new CompressionResult(false, e.getMessage(), 0, 0);
-        }
-    }
-    
-    private static CompressionResult padToMeetRatio(File inputFile, File outputFile, double minCompressionRatio) {
-        try {
-            long originalSize = inputFile.length();
-            long compressedSize = outputFile.length();
-            
-            // Calculate how much we need to pad to meet the minimum ratio
-            long targetCompressedSize = (long) (originalSize * (1 - minCompressionRatio));
-            
-            if (compressedSize >= targetCompressedSize) {
-                // No padding needed, we've already met the ratio
-                return new CompressionResult(true, "", originalSize, compressedSize);
-            }
-            
-            // Calculate padding size
-            int paddingSize = (int) (targetCompressedSize - compressedSize);
-            
-            // Create padding (using zeros for simplicity)
-            byte[] padding = new byte[paddingSize];
-            
-            // Append padding to the compressed file
-            try (FileOutputStream fos = new FileOutputStream(outputFile, true)) {
-                fos.write(padding);
-            }
-            
-            return new CompressionResult(true, "Padded to meet minimum compression ratio", 
-                                       originalSize, outputFile.length());
-            
-        } catch (Exception e) {
-            return new CompressionResult(false, "Error padding file: " + e.getMessage(), 0, 0);
-        }
-    }
-    
-    private static byte[] compressData(byte[] data) {
-        // This is a simplified example - in a real implementation, you would use
-        // a more sophisticated compression algorithm here
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             GZIPOutputStream gzipOS = new GZIPOutputStream(baos)) {
-            
-            gzipOS.write(data);
-            gzipOS.finish();
-            return baos.toByteArray();
-            
-        } catch (IOException e) {
-            throw new RuntimeException("Compression failed", e);
+            return CodecRace.compress(inputFile, outputFile, minCompressionRatio,
+                candidates.isEmpty() ? CodecRace.DEFAULT_CANDIDATES : candidates);
+        } catch (IOException | RuntimeException e) {
+            return new CompressionResult(false, e.getMessage(), inputFile.length(), 0);
         }
     }
     
     private static boolean decompressFile(File inputFile, File outputFile) {
         try (FileInputStream fis = new FileInputStream(inputFile);
              GZIPInputStream gzis = new GZIPInputStream(fis);
-             FileOutputStream fos = new FileOutputStream(outputFile)) {
+             FileOutputStream fos = new FileOutputStream(outputFile);
+             BufferPool.Lease<byte[]> lease = BufferPool.shared().array(BUFFER_SIZE)) {
             
-            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] buffer = lease.get();
             int len;
             long totalRead = 0;
             long fileSize = inputFile.length();
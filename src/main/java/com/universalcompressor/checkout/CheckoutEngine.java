@@ -0,0 +1,428 @@
+package com.universalcompressor.checkout;
+
+import com.universalcompressor.UniversalCompressor;
+import com.universalcompressor.codec.CheckpointJournal;
+import com.universalcompressor.manifest.AssetManifest;
+import com.universalcompressor.model.ManifestEntry;
+import com.universalcompressor.store.ChunkStore;
+import com.universalcompressor.util.CompressionConfig;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Restores the working copies of the assets in a manifest. Entries are grouped by content
+ * hash, so that identical assets (the same texture referenced from several folders) are
+ * decompressed once; the other copies are materialized from it by reflink or plain copy.
+ * With reflinks, checkout time and disk writes then scale with unique content rather than
+ * with the number of files. Hard links are only used when checkout.hard_links is set,
+ * since the copies then share one inode and a tool that saves one in place changes all.
+ *
+ * A group whose content is already present in an up-to-date working file is not
+ * decompressed at all. Groups are checked and restored in parallel; checkout.threads
+ * bounds the workers. checkout.max_concurrent_writes bounds the plain copies, which would
+ * otherwise make the disk seek between them. Decompressions stream full-size outputs as
+ * well and are limited by checkout.max_concurrent_decodes, which defaults to the same
+ * value; on SSDs it can be raised up to the number of workers to decode on every core.
+ *
+ * Entries stored as chunk recipes are reassembled from the shared {@link ChunkStore},
+ * which is opened once per checkout and read by all workers.
+ */
+public class CheckoutEngine {
+    private static final Logger logger = LoggerFactory.getLogger(CheckoutEngine.class);
+
+    private static final long REFLINK_TIMEOUT_SECONDS = 60;
+
+    private final File root;
+    private final CompressionConfig config;
+    private final boolean useReflinks;
+    private final boolean useHardLinks;
+    private final int threads;
+    private final Semaphore decodeSlots; // decompressions in flight
+    private final Semaphore writeSlots; // full-size copies in flight, to keep the disk from seeking between them
+    private volatile boolean reflinkSupported = true;
+    private ChunkStore chunkStore; // opened on first use, guarded by this
+
+    /**
+     * How a working file was restored.
+     */
+    public enum Materialization {
+        DECOMPRESSED, REFLINK, HARD_LINK, COPY
+    }
+
+    /**
+     * Totals of a checkout.
+     */
+    public static final class Summary {
+        private final Map<Materialization, Integer> counts = new EnumMap<>(Materialization.class);
+        private int upToDate;
+        private int failed;
+        private long bytesWritten;
+
+        synchronized void add(Materialization how, long bytes) {
+            counts.merge(how, 1, Integer::sum);
+            if (how == Materialization.DECOMPRESSED || how == Materialization.COPY) {
+                bytesWritten += bytes;
+            }
+        }
+
+        synchronized void addUpToDate(int n) {
+            upToDate += n;
+        }
+
+        synchronized void addFailed() {
+            failed++;
+        }
+
+        public synchronized int getCount(Materialization how) {
+            return counts.getOrDefault(how, 0);
+        }
+
+        public synchronized int getUpToDate() {
+            return upToDate;
+        }
+
+        public synchronized int getFailed() {
+            return failed;
+        }
+
+        public synchronized long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return getCount(Materialization.DECOMPRESSED) + " decompressed, "
+                + getCount(Materialization.REFLINK) + " reflinked, "
+                + getCount(Materialization.HARD_LINK) + " hard-linked, "
+                + getCount(Materialization.COPY) + " copied, "
+                + upToDate + " up to date, " + failed + " failed ("
+                + bytesWritten / (1024 * 1024) + " MB written)";
+        }
+    }
+
+    /**
+     * The work left for one group of identical assets after the up-to-date check.
+     */
+    private static final class GroupPlan {
+        private final List<ManifestEntry> stale;
+        private final File source;
+
+        GroupPlan(List<ManifestEntry> stale, File source) {
+            this.stale = stale;
+            this.source = source;
+        }
+
+        // Decompression dominates; links and copies from an existing source are cheap by comparison
+        long cost() {
+            long size = expectedSize(stale.get(0));
+            return source == null ? size : size / 16;
+        }
+
+        long bytes() {
+            return stale.stream().mapToLong(CheckoutEngine::expectedSize).sum();
+        }
+    }
+
+    /**
+     * @param root The repository root that manifest paths are relative to
+     * @param config Supplies the "checkout" settings
+     */
+    public CheckoutEngine(File root, CompressionConfig config) {
+        this.root = root;
+        this.config = config;
+        this.useReflinks = config.getBoolean("checkout.reflinks", true);
+        this.useHardLinks = config.getBoolean("checkout.hard_links", false);
+        int configuredThreads = (int) config.getLong("checkout.threads", 0);
+        this.threads = configuredThreads > 0 ? configuredThreads : Runtime.getRuntime().availableProcessors();
+        int maxWrites = (int) config.getLong("checkout.max_concurrent_writes", 4);
+        maxWrites = maxWrites > 0 ? maxWrites : threads;
+        this.writeSlots = new Semaphore(maxWrites);
+        // Every decompression streams a full-size output, so by default it counts as a writer
+        int maxDecodes = (int) config.getLong("checkout.max_concurrent_decodes", 0);
+        this.decodeSlots = new Semaphore(maxDecodes > 0 ? maxDecodes : maxWrites);
+    }
+
+    /**
+     * Restores every entry whose working file is missing or out of date. Working files are
+     * first checked in parallel; the groups that need work are then restored on all cores,
+     * largest first so that a big asset does not start last and extend the checkout alone.
+     * Progress is printed to standard output while this runs.
+     */
+    public Summary checkout(List<ManifestEntry> entries) throws IOException {
+        Summary summary = new Summary();
+
+        // Files without a recorded hash cannot be shared and form groups of their own
+        Map<String, List<ManifestEntry>> groups = entries.stream().collect(Collectors.groupingBy(
+            entry -> entry.getContentHash() != null ? entry.getContentHash() : "path:" + entry.getPath(),
+            LinkedHashMap::new, Collectors.toList()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "checkout-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        try (CheckoutProgress progress = new CheckoutProgress(System.out, entries.size())) {
+            List<Future<GroupPlan>> checks = new ArrayList<>();
+            for (List<ManifestEntry> group : groups.values()) {
+                checks.add(executor.submit(() -> plan(group, summary, progress)));
+            }
+            List<GroupPlan> work = new ArrayList<>();
+            for (Future<GroupPlan> check : checks) {
+                GroupPlan plan = await(check);
+                if (plan != null) {
+                    work.add(plan);
+                }
+            }
+
+            work.sort(Comparator.comparingLong(GroupPlan::cost).reversed());
+            progress.startRestore(work.stream().mapToInt(plan -> plan.stale.size()).sum(),
+                work.stream().mapToLong(GroupPlan::bytes).sum());
+            List<Future<GroupPlan>> restores = new ArrayList<>();
+            for (GroupPlan plan : work) {
+                restores.add(executor.submit(() -> restore(plan, summary, progress), plan));
+            }
+            for (Future<GroupPlan> restore : restores) {
+                await(restore);
+            }
+        } finally {
+            executor.shutdownNow();
+            closeChunkStore();
+        }
+        return summary;
+    }
+
+    private synchronized ChunkStore chunkStore() throws IOException {
+        if (chunkStore == null) {
+            chunkStore = ChunkStore.fromConfig(root, config);
+        }
+        return chunkStore;
+    }
+
+    private synchronized void closeChunkStore() throws IOException {
+        if (chunkStore != null) {
+            chunkStore.close();
+            chunkStore = null;
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during checkout");
+        } catch (ExecutionException e) {
+            throw new IOException("Checkout worker failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Finds the stale entries of a group and an up-to-date copy to restore them from.
+     * @return The work left, or null if every entry is up to date
+     */
+    private GroupPlan plan(List<ManifestEntry> group, Summary summary, CheckoutProgress progress) {
+        List<ManifestEntry> stale = new ArrayList<>();
+        File source = null;
+        for (ManifestEntry entry : group) {
+            if (isUpToDate(entry)) {
+                if (source == null) {
+                    source = workFile(entry);
+                }
+            } else {
+                stale.add(entry);
+            }
+        }
+        summary.addUpToDate(group.size() - stale.size());
+        progress.checked(group.size());
+        return stale.isEmpty() ? null : new GroupPlan(stale, source);
+    }
+
+    private void restore(GroupPlan plan, Summary summary, CheckoutProgress progress) {
+        File source = plan.source;
+        Iterator<ManifestEntry> remaining = plan.stale.iterator();
+        while (source == null && remaining.hasNext()) {
+            ManifestEntry entry = remaining.next();
+            if (decompress(entry)) {
+                summary.add(Materialization.DECOMPRESSED, expectedSize(entry));
+                source = workFile(entry);
+            } else {
+                summary.addFailed();
+            }
+            progress.restored(expectedSize(entry));
+        }
+        while (remaining.hasNext()) {
+            ManifestEntry entry = remaining.next();
+            try {
+                summary.add(materialize(source, entry), expectedSize(entry));
+            } catch (IOException e) {
+                logger.error("Failed to restore {}: {}", entry.getPath(), e.getMessage());
+                summary.addFailed();
+            }
+            progress.restored(expectedSize(entry));
+        }
+    }
+
+    /**
+     * The original size, or for an entry migrated without it, the compressed size as a
+     * lower bound for scheduling and progress.
+     */
+    private static long expectedSize(ManifestEntry entry) {
+        return entry.isSizeKnown() ? entry.getOriginalSize() : entry.getCompressedSize();
+    }
+
+    private boolean isUpToDate(ManifestEntry entry) {
+        try {
+            return AssetManifest.isUpToDate(workFile(entry), entry);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private File workFile(ManifestEntry entry) {
+        return new File(root, entry.getPath());
+    }
+
+    private boolean decompress(ManifestEntry entry) {
+        File compressed = new File(root, entry.getCompressedPath());
+        File target = workFile(entry);
+        if (!compressed.isFile()) {
+            logger.warn("Compressed file not found: {}", entry.getCompressedPath());
+            return false;
+        }
+        File tmp = tempFileFor(target);
+        decodeSlots.acquireUninterruptibly();
+        try {
+            Files.createDirectories(target.getAbsoluteFile().getParentFile().toPath());
+            if (ChunkStore.METHOD.equals(entry.getMethod())) {
+                chunkStore().get(compressed, tmp);
+            } else if (!UniversalCompressor.decompressAutoDetect(compressed, tmp)) {
+                logger.error("Failed to decompress {}", entry.getCompressedPath());
+                return false;
+            }
+            // Entries migrated from the legacy list without their original have nothing to check against
+            boolean verifiable = entry.isSizeKnown() && entry.getContentHash() != null;
+            if (verifiable && tmp.length() != entry.getOriginalSize()) {
+                logger.error("{} decompressed to {} bytes, expected {}", entry.getCompressedPath(),
+                    tmp.length(), entry.getOriginalSize());
+                return false;
+            }
+            replace(tmp, target);
+            // Without a recorded mtime, match the compressed file as the legacy hook did
+            target.setLastModified(entry.getModifiedTime() > 0 ? entry.getModifiedTime() : compressed.lastModified());
+            logger.debug("Decompressed {}", entry.getPath());
+            return true;
+        } catch (IOException e) {
+            logger.error("Failed to restore {}: {}", entry.getPath(), e.getMessage());
+            return false;
+        } finally {
+            // The partial output and its resume journal go together. A killed checkout
+            // leaves both, and the next one resumes a seekable file from the journal.
+            tmp.delete();
+            CheckpointJournal.journalFor(tmp).delete();
+            decodeSlots.release();
+        }
+    }
+
+    /**
+     * Creates a working file with the same content as an existing one, as cheaply as the
+     * filesystem allows.
+     */
+    private Materialization materialize(File source, ManifestEntry entry) throws IOException {
+        File target = workFile(entry);
+        Files.createDirectories(target.getAbsoluteFile().getParentFile().toPath());
+        File tmp = tempFileFor(target);
+        try {
+            Materialization how;
+            if (useReflinks && reflinkSupported && reflink(source, tmp)) {
+                how = Materialization.REFLINK;
+            } else if (useHardLinks && hardLink(source, tmp)) {
+                how = Materialization.HARD_LINK;
+            } else {
+                writeSlots.acquireUninterruptibly();
+                try {
+                    Files.copy(source.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    writeSlots.release();
+                }
+                how = Materialization.COPY;
+            }
+            replace(tmp, target);
+            // A hard link shares the source's inode and therefore its modification time
+            if (how != Materialization.HARD_LINK) {
+                target.setLastModified(entry.getModifiedTime());
+            }
+            logger.debug("Restored {} from {} ({})", entry.getPath(), source, how);
+            return how;
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Clones the file's extents (FICLONE on Btrfs and XFS, clonefile on APFS). The JDK has
+     * no API for it, so this goes through cp; once the filesystem refuses, it is not tried
+     * again.
+     */
+    private boolean reflink(File source, File target) {
+        String os = System.getProperty("os.name", "").toLowerCase();
+        List<String> command;
+        if (os.contains("linux")) {
+            command = Arrays.asList("cp", "--reflink=always", source.getPath(), target.getPath());
+        } else if (os.contains("mac")) {
+            command = Arrays.asList("cp", "-c", source.getPath(), target.getPath());
+        } else {
+            reflinkSupported = false;
+            return false;
+        }
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            if (!process.waitFor(REFLINK_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                return false;
+            }
+            if (process.exitValue() == 0) {
+                return true;
+            }
+        } catch (IOException e) {
+            logger.debug("Reflink unavailable: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        logger.debug("Filesystem does not support reflinks; falling back to links or copies");
+        reflinkSupported = false;
+        target.delete();
+        return false;
+    }
+
+    private static boolean hardLink(File source, File target) {
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            // Different filesystem, or links not supported
+            return false;
+        }
+    }
+
+    private static File tempFileFor(File target) {
+        return new File(target.getAbsoluteFile().getParentFile(), "." + target.getName() + ".uc-tmp");
+    }
+
+    private static void replace(File tmp, File target) throws IOException {
+        try {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.universalcompressor.checkout;
+
+import com.universalcompressor.util.FileUtils;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prints checkout progress while it runs: files checked, then files and bytes restored
+ * with throughput and an ETA. On a terminal the line is rewritten in place; otherwise,
+ * e.g. when a hook's output is captured, a line is printed every few seconds.
+ */
+class CheckoutProgress implements Closeable {
+    private static final long TERMINAL_INTERVAL_MS = 500;
+    private static final long LOG_INTERVAL_MS = 5000;
+
+    private final PrintStream out;
+    private final boolean terminal;
+    private final int totalFiles;
+    private final AtomicInteger checked = new AtomicInteger();
+    private final AtomicInteger restored = new AtomicInteger();
+    private final AtomicLong restoredBytes = new AtomicLong();
+    private final ScheduledExecutorService timer;
+
+    private volatile int restoreFiles = -1; // -1 while still checking
+    private volatile long restoreBytes;
+    private volatile long restoreStartNanos;
+    private int lastLineLength;
+
+    CheckoutProgress(PrintStream out, int totalFiles) {
+        this.out = out;
+        this.terminal = System.console() != null;
+        this.totalFiles = totalFiles;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "checkout-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = terminal ? TERMINAL_INTERVAL_MS : LOG_INTERVAL_MS;
+        timer.scheduleAtFixedRate(this::print, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    void checked(int files) {
+        checked.addAndGet(files);
+    }
+
+    /**
+     * Switches from checking to restoring.
+     * @param files Number of working files that will be written
+     * @param bytes Their total size
+     */
+    void startRestore(int files, long bytes) {
+        restoreBytes = bytes;
+        restoreStartNanos = System.nanoTime();
+        restoreFiles = files;
+    }
+
+    void restored(long bytes) {
+        restored.incrementAndGet();
+        restoredBytes.addAndGet(bytes);
+    }
+
+    private synchronized void print() {
+        String line;
+        int files = restoreFiles;
+        if (files < 0) {
+            line = String.format("Checking %d/%d files", checked.get(), totalFiles);
+        } else if (files == 0) {
+            line = String.format("All %d files up to date", totalFiles);
+        } else {
+            long done = restoredBytes.get();
+            double seconds = (System.nanoTime() - restoreStartNanos) / 1e9;
+            double rate = seconds > 0 ? done / seconds : 0;
+            String eta = rate > 0 ? formatDuration((long) ((restoreBytes - done) / rate)) : "--";
+            line = String.format("Restored %d/%d files, %s of %s, %s/s, ETA %s", restored.get(), files,
+                FileUtils.formatFileSize(done), FileUtils.formatFileSize(restoreBytes),
+                FileUtils.formatFileSize((long) rate), eta);
+        }
+        if (terminal) {
+            // Pad to clear the rest of a longer previous line
+            int padding = Math.max(0, lastLineLength - line.length());
+            out.print("\r" + line + " ".repeat(padding));
+            lastLineLength = line.length();
+        } else {
+            out.println(line);
+        }
+        out.flush();
+    }
+
+    private static String formatDuration(long seconds) {
+        if (seconds >= 3600) {
+            return String.format("%dh%02dm", seconds / 3600, seconds % 3600 / 60);
+        } else if (seconds >= 60) {
+            return String.format("%dm%02ds", seconds / 60, seconds % 60);
+        }
+        return seconds + "s";
+    }
+
+    /**
+     * Stops the updates and prints the final state.
+     */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        try {
+            timer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        print();
+        if (terminal) {
+            out.println();
+        }
+    }
+}
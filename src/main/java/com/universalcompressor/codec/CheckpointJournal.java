@@ -0,0 +1,178 @@
+package com.universalcompressor.codec;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Sidecar progress journal for resumable operations on large files.
+ *
+ * The journal is a small text file next to the output. Its first line is a fingerprint
+ * of the operation (input size, modification time and codec parameters); every further
+ * line is one record of space-separated numbers describing a durable unit of work.
+ * Records are only appended after the output they describe has been forced to disk, so
+ * on restart everything listed in the journal can be trusted. A torn trailing line left
+ * by a crash is ignored.
+ */
+public class CheckpointJournal implements Closeable {
+
+    public static final String SUFFIX = ".journal";
+
+    private final File file;
+    private final FileChannel channel;
+    private final List<long[]> records;
+
+    private CheckpointJournal(File file, FileChannel channel, List<long[]> records) {
+        this.file = file;
+        this.channel = channel;
+        this.records = records;
+    }
+
+    /**
+     * Returns the journal location for an output file.
+     */
+    public static File journalFor(File outputFile) {
+        return new File(outputFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * Opens a journal, keeping its records only if it was written for the same operation.
+     * @param file The journal file
+     * @param fingerprint Identifies the input and parameters; a mismatch discards old records
+     */
+    public static CheckpointJournal open(File file, String fingerprint) throws IOException {
+        List<long[]> records = new ArrayList<>();
+        long validLength = -1;
+
+        if (file.exists()) {
+            byte[] content = Files.readAllBytes(file.toPath());
+            int lineStart = 0;
+            boolean header = true;
+            for (int i = 0; i < content.length; i++) {
+                if (content[i] != '\n') {
+                    continue;
+                }
+                String line = new String(content, lineStart, i - lineStart, StandardCharsets.UTF_8);
+                lineStart = i + 1;
+                if (header) {
+                    if (!line.equals(fingerprint)) {
+                        break;
+                    }
+                    header = false;
+                    validLength = lineStart;
+                    continue;
+                }
+                long[] record = parse(line);
+                if (record == null) {
+                    break;
+                }
+                records.add(record);
+                validLength = lineStart;
+            }
+        }
+
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (validLength < 0) {
+                records.clear();
+                channel.truncate(0);
+                write(channel, fingerprint + "\n");
+                channel.force(true);
+            } else {
+                channel.truncate(validLength);
+                channel.position(validLength);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new CheckpointJournal(file, channel, records);
+    }
+
+    private static long[] parse(String line) {
+        String[] parts = line.trim().split(" ");
+        long[] record = new long[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                record[i] = Long.parseLong(parts[i]);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return record;
+    }
+
+    /**
+     * Records recovered from a previous run, in the order they were written.
+     */
+    public List<long[]> getRecords() {
+        return Collections.unmodifiableList(records);
+    }
+
+    /**
+     * Appends records and forces them to disk. Callers must force the output they
+     * describe before calling this.
+     */
+    public void append(List<long[]> newRecords) throws IOException {
+        if (newRecords.isEmpty()) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (long[] record : newRecords) {
+            for (int i = 0; i < record.length; i++) {
+                if (i > 0) {
+                    sb.append(' ');
+                }
+                sb.append(record[i]);
+            }
+            sb.append('\n');
+        }
+        write(channel, sb.toString());
+        channel.force(false);
+        records.addAll(newRecords);
+    }
+
+    /**
+     * Drops all records, e.g. when the output no longer matches the journal.
+     */
+    public void reset(String fingerprint) throws IOException {
+        records.clear();
+        channel.truncate(0);
+        channel.position(0);
+        write(channel, fingerprint + "\n");
+        channel.force(true);
+    }
+
+    /**
+     * Closes and removes the journal once the operation has completed.
+     */
+    public void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file.toPath());
+    }
+
+    /**
+     * Closes the journal. A journal without records describes no durable work, so it is
+     * removed rather than left behind as a sign of resumable progress.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.close();
+            if (records.isEmpty()) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    private static void write(FileChannel channel, String text) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.universalcompressor.codec;
+
+import com.universalcompressor.io.BufferPool;
+import com.universalcompressor.model.CompressionResult;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compresses a file with several codecs at once and keeps the smallest output that meets
+ * a minimum reduction ratio.
+ *
+ * The input is read once into a small ring of pooled chunks that every candidate
+ * consumes, so memory use does not depend on the file size. Compressed output only
+ * grows, so a candidate is cancelled as soon as it has written more than the ratio
+ * allows or more than a candidate that has already finished.
+ *
+ * Candidates are written as {@code codec:level}, e.g. {@code zstd:19}, {@code xz:6},
+ * {@code bzip2:9} or {@code gzip:9}. All of them produce formats that are recognised by
+ * their magic number on decompression.
+ */
+public final class CodecRace {
+    private static final Logger logger = LoggerFactory.getLogger(CodecRace.class);
+
+    public static final List<String> DEFAULT_CANDIDATES =
+        Collections.unmodifiableList(Arrays.asList("zstd:19", "xz:6", "zstd:9", "bzip2:9", "gzip:9"));
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int CHUNK_COUNT = 8;
+
+    private CodecRace() {
+    }
+
+    /**
+     * A read-once input chunk shared by all running candidates.
+     */
+    private static final class Chunk {
+        private final byte[] data;
+        private final BlockingQueue<Chunk> free;
+        private final AtomicInteger refs = new AtomicInteger();
+        private int length;
+
+        Chunk(byte[] data, BlockingQueue<Chunk> free) {
+            this.data = data;
+            this.free = free;
+        }
+
+        void release() {
+            if (refs.decrementAndGet() == 0) {
+                free.add(this);
+            }
+        }
+    }
+
+    private static final Chunk END = new Chunk(new byte[0], null);
+
+    /**
+     * One candidate codec and level, encoding into its own temporary file.
+     */
+    private static final class Entrant implements Callable<Void> {
+        private final String codec;
+        private final int level;
+        private final File output;
+        private final AtomicLong bound;
+        private final BlockingQueue<Chunk> queue = new LinkedBlockingQueue<>();
+        private final AtomicLong written = new AtomicLong();
+        private volatile boolean cancelled;
+        private volatile long size = -1;
+
+        Entrant(String spec, File output, AtomicLong bound) {
+            int colon = spec.indexOf(':');
+            this.codec = (colon < 0 ? spec : spec.substring(0, colon)).trim().toLowerCase();
+            this.level = colon < 0 ? defaultLevel(codec) : Integer.parseInt(spec.substring(colon + 1).trim());
+            this.output = output;
+            this.bound = bound;
+        }
+
+        String getName() {
+            return codec.toUpperCase() + " level " + level;
+        }
+
+        @Override
+        public Void call() throws IOException, InterruptedException {
+            OutputStream encoder = null;
+            boolean finished = false;
+            try {
+                if ("brotli".equals(codec)) {
+                    // Raw Brotli has no magic number, so the output could not be detected later
+                    throw new IllegalArgumentException("Brotli cannot take part in a race");
+                }
+                encoder = CodecStreams.openCompressing(new CountingOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(output), 256 * 1024), written), codec, level);
+                Chunk chunk;
+                while ((chunk = queue.take()) != END) {
+                    try {
+                        if (!cancelled) {
+                            encoder.write(chunk.data, 0, chunk.length);
+                            if (written.get() > bound.get()) {
+                                // Larger than the ratio allows or than a finished candidate
+                                cancel(encoder);
+                                encoder = null;
+                            }
+                        }
+                    } finally {
+                        chunk.release();
+                    }
+                }
+                if (!cancelled) {
+                    encoder.close();
+                    encoder = null;
+                    size = output.length();
+                    // Others must now beat this size to be worth finishing
+                    bound.accumulateAndGet(size - 1, Math::min);
+                }
+                finished = true;
+                return null;
+            } catch (IOException | RuntimeException e) {
+                cancel(encoder);
+                encoder = null;
+                drain();
+                throw e;
+            } finally {
+                if (!finished) {
+                    // Also reached when shutdownNow interrupts queue.take(); the native
+                    // encoder context must still be freed and the temporary output removed
+                    cancel(encoder);
+                }
+            }
+        }
+
+        // Keeps releasing chunks until the reader is done so that it never waits on this entrant
+        private void drain() throws InterruptedException {
+            Chunk chunk;
+            while ((chunk = queue.take()) != END) {
+                chunk.release();
+            }
+        }
+
+        private void cancel(OutputStream encoder) {
+            cancelled = true;
+            if (encoder != null) {
+                try {
+                    encoder.close();
+                } catch (IOException e) {
+                    logger.debug("Closing cancelled {} encoder: {}", codec, e.getMessage());
+                }
+            }
+            output.delete();
+        }
+    }
+
+    /**
+     * Counts the bytes written through it; the encoders' own buffering only delays the count.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private final AtomicLong count;
+
+        CountingOutputStream(OutputStream out, AtomicLong count) {
+            super(out);
+            this.count = count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count.addAndGet(len);
+        }
+    }
+
+    private static int defaultLevel(String codec) {
+        switch (codec) {
+            case "zstd":
+                return 19;
+            case "xz":
+                return 6;
+            default:
+                return 9;
+        }
+    }
+
+    /**
+     * Compresses a file with all candidates concurrently and keeps the smallest output.
+     * @param inputFile The file to compress
+     * @param outputFile Receives the winning output
+     * @param minCompressionRatio Required reduction, e.g. 0.16 for at least 16% smaller
+     * @param candidates Codec and level pairs, see {@link #DEFAULT_CANDIDATES}
+     * @return The result; unsuccessful if no candidate met the ratio, in which case the
+     *         output file is not written
+     */
+    public static CompressionResult compress(File inputFile, File outputFile, double minCompressionRatio,
+                                             List<String> candidates) throws IOException {
+        long originalSize = inputFile.length();
+        long maxSize = (long) Math.floor(originalSize * (1 - minCompressionRatio));
+        AtomicLong bound = new AtomicLong(maxSize);
+
+        List<Entrant> entrants = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            entrants.add(new Entrant(candidates.get(i), new File(outputFile.getPath() + ".race" + i), bound));
+        }
+        if (entrants.isEmpty()) {
+            throw new IllegalArgumentException("No candidate codecs");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(entrants.size(), r -> {
+            Thread t = new Thread(r, "codec-race");
+            t.setDaemon(true);
+            return t;
+        });
+        BlockingQueue<Chunk> free = new LinkedBlockingQueue<>();
+        List<BufferPool.Lease<byte[]>> leases = new ArrayList<>();
+        try {
+            for (int i = 0; i < CHUNK_COUNT; i++) {
+                BufferPool.Lease<byte[]> lease = BufferPool.shared().array(CHUNK_SIZE);
+                leases.add(lease);
+                free.add(new Chunk(lease.get(), free));
+            }
+
+            List<Future<Void>> futures = new ArrayList<>();
+            for (Entrant entrant : entrants) {
+                futures.add(executor.submit(entrant));
+            }
+            try {
+                feed(inputFile, entrants, free);
+            } finally {
+                for (Entrant entrant : entrants) {
+                    entrant.queue.add(END);
+                }
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    logger.warn("Candidate {} failed: {}", entrants.get(i).getName(), e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing " + inputFile);
+        } finally {
+            executor.shutdownNow();
+            // Wait even when interrupted, so that every entrant has removed its temporary
+            // output before the caller sees the result
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    executor.awaitTermination(1, TimeUnit.MINUTES);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            for (BufferPool.Lease<byte[]> lease : leases) {
+                lease.close();
+            }
+        }
+
+        Entrant winner = null;
+        for (Entrant entrant : entrants) {
+            if (entrant.size >= 0 && entrant.size <= maxSize && (winner == null || entrant.size < winner.size)) {
+                winner = entrant;
+            }
+        }
+        for (Entrant entrant : entrants) {
+            if (entrant != winner) {
+                entrant.output.delete();
+            }
+        }
+        if (winner == null) {
+            return new CompressionResult(false, String.format(
+                "No candidate reduced the size by at least %.0f%%", minCompressionRatio * 100), originalSize, 0);
+        }
+
+        Files.move(winner.output.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        logger.debug("{} won the race for {} ({} -> {} bytes)", winner.getName(), inputFile.getName(),
+            originalSize, winner.size);
+        return new CompressionResult(originalSize, winner.size, winner.getName());
+    }
+
+    /**
+     * Reads the input once and hands each chunk to every candidate still running.
+     */
+    private static void feed(File inputFile, List<Entrant> entrants, BlockingQueue<Chunk> free)
+            throws IOException, InterruptedException {
+        try (InputStream in = new FileInputStream(inputFile)) {
+            while (true) {
+                Chunk chunk = free.take();
+                int length = 0;
+                int n;
+                while (length < CHUNK_SIZE && (n = in.read(chunk.data, length, CHUNK_SIZE - length)) != -1) {
+                    length += n;
+                }
+                List<Entrant> active = new ArrayList<>();
+                for (Entrant entrant : entrants) {
+                    if (!entrant.cancelled) {
+                        active.add(entrant);
+                    }
+                }
+                if (length == 0 || active.isEmpty()) {
+                    free.add(chunk);
+                    return;
+                }
+                chunk.length = length;
+                chunk.refs.set(active.size());
+                for (Entrant entrant : active) {
+                    entrant.queue.add(chunk);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.universalcompressor.codec;
+
+import com.universalcompressor.UniversalCompressor.CompressionMethod;
+
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZInputStream;
+import org.tukaani.xz.XZOutputStream;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import org.brotli.dec.BrotliInputStream;
+import org.brotli.enc.BrotliOutputStream;
+import org.brotli.enc.Encoder;
+
+/**
+ * Format detection and codec streams shared by the tools that need to read or write
+ * compressed assets without going through a full file-to-file operation.
+ */
+public final class CodecStreams {
+
+    private static final int STREAM_BUFFER_SIZE = 256 * 1024; // 256KB read-ahead for the compressed side
+
+    private CodecStreams() {
+    }
+
+    /**
+     * Detects the compression format of a file, first by extension and then by magic number.
+     * @param file The compressed file
+     * @return The detected method, or null if the format is not recognised
+     */
+    public static CompressionMethod detect(File file) throws IOException {
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(".gz") || name.endsWith(".gzip")) {
+            return CompressionMethod.GZIP;
+        } else if (name.endsWith(".bz2") || name.endsWith(".bzip2")) {
+            return CompressionMethod.BZIP2;
+        } else if (name.endsWith(".xz")) {
+            return CompressionMethod.XZ;
+        } else if (name.endsWith(".7z")) {
+            return CompressionMethod.SEVEN_Z;
+        } else if (name.endsWith(".zst") || name.endsWith(".zstd") || name.endsWith(SparseZstd.EXTENSION)) {
+            return CompressionMethod.ZSTD;
+        } else if (name.endsWith(".br")) {
+            return CompressionMethod.BROTLI;
+        }
+
+        byte[] header = new byte[8];
+        try (FileInputStream fis = new FileInputStream(file)) {
+            if (fis.read(header) != header.length) {
+                return null;
+            }
+        }
+
+        if (header[0] == 'U' && header[1] == 'C' && header[2] == 'S' && header[3] == 'P') {
+            return CompressionMethod.ZSTD; // zstd with constant runs taken out
+        } else if (header[0] == 0x28 && header[1] == (byte)0xB5 && header[2] == 0x2F && header[3] == (byte)0xFD) {
+            return CompressionMethod.ZSTD;
+        } else if ((header[0] & 0xF0) == 0x50 && header[1] == 0x2A && header[2] == 0x4D && header[3] == 0x18) {
+            return CompressionMethod.ZSTD; // skippable frame first, e.g. the tier tag
+        } else if (header[0] == 0x1F && header[1] == (byte)0x8B) {
+            return CompressionMethod.GZIP;
+        } else if (header[0] == 'B' && header[1] == 'Z' && header[2] == 'h') {
+            return CompressionMethod.BZIP2;
+        } else if (header[0] == (byte)0xFD && header[1] == '7' && header[2] == 'z' && header[3] == 'X' && header[4] == 'Z') {
+            return CompressionMethod.XZ;
+        } else if (header[0] == 'U' && header[1] == 'C' && header[2] == 'B' && header[3] == 'R') {
+            return CompressionMethod.BROTLI;
+        } else if (header[0] == '7' && header[1] == 'z' && header[2] == (byte)0xBC && header[3] == (byte)0xAF) {
+            return CompressionMethod.SEVEN_Z;
+        }
+        return null;
+    }
+
+    /**
+     * Opens a decoding stream over a compressed file. Integrity checks embedded in the
+     * format (zstd content checksum, gzip CRC32, xz check, bzip2 block CRC) are validated
+     * by the underlying decoder as the stream is consumed.
+     * @param file The compressed file
+     * @param method The format of the file (see {@link #detect(File)})
+     * @return A stream producing the decompressed bytes
+     */
+    public static InputStream openDecompressing(File file, CompressionMethod method) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), STREAM_BUFFER_SIZE);
+        try {
+            switch (method) {
+                case ZSTD:
+                    if (SparseZstd.isSparse(file)) {
+                        in.close();
+                        return SparseZstd.openDecompressing(file);
+                    }
+                    return ZstdWindow.allowWindow(new ZstdInputStream(in), file, 0);
+                case BROTLI:
+                    if (ParallelBrotli.isParallelBrotli(file)) {
+                        in.close();
+                        return ParallelBrotli.openDecompressing(file);
+                    }
+                    return new BrotliInputStream(in);
+                default:
+                    return openDecompressing(in, method);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a decoding stream over plain compressed data, such as an in-memory buffer. The
+     * repository's container formats (sparse zstd, parallel Brotli) need the file and go
+     * through {@link #openDecompressing(File, CompressionMethod)} instead.
+     * @param in The compressed data
+     * @param method The format of the data
+     * @return A stream producing the decompressed bytes
+     */
+    public static InputStream openDecompressing(InputStream in, CompressionMethod method) throws IOException {
+        switch (method) {
+            case GZIP:
+                return new GZIPInputStream(in, STREAM_BUFFER_SIZE);
+            case BZIP2:
+                return new BZip2CompressorInputStream(in, true);
+            case XZ:
+                return new XZInputStream(in);
+            case ZSTD:
+                return new ZstdInputStream(in);
+            case BROTLI:
+                return new BrotliInputStream(in);
+            default:
+                throw new IOException("Streaming decode is not supported for " + method);
+        }
+    }
+
+    /**
+     * Opens an encoding stream for a codec at an explicit level. Closing the returned stream
+     * finishes the format and closes {@code out}.
+     * @param out Receives the compressed bytes
+     * @param codec One of zstd, xz, bzip2, gzip or brotli
+     * @param level Codec level (Brotli quality)
+     */
+    public static OutputStream openCompressing(OutputStream out, String codec, int level) throws IOException {
+        switch (codec) {
+            case "zstd":
+                ZstdOutputStream zstdOS = new ZstdOutputStream(out, level);
+                zstdOS.setChecksum(true);
+                return zstdOS;
+            case "xz":
+                return new XZOutputStream(out, new LZMA2Options(level));
+            case "bzip2":
+                return new BZip2CompressorOutputStream(out, level);
+            case "gzip":
+                return new GZIPOutputStream(out, 64 * 1024) {
+                    { def.setLevel(level); }
+                };
+            case "brotli":
+                return new BrotliOutputStream(out, new Encoder.Parameters().setQuality(level).setMode(Encoder.Mode.TEXT));
+            default:
+                out.close();
+                throw new IllegalArgumentException("Unknown codec: " + codec);
+        }
+    }
+
+    /**
+     * Maps a codec name as used in {@code codec:level} specs to its format.
+     * @return The format, or null for an unknown codec
+     */
+    public static CompressionMethod methodOf(String codec) {
+        switch (codec) {
+            case "zstd":
+                return CompressionMethod.ZSTD;
+            case "xz":
+                return CompressionMethod.XZ;
+            case "bzip2":
+                return CompressionMethod.BZIP2;
+            case "gzip":
+                return CompressionMethod.GZIP;
+            case "brotli":
+                return CompressionMethod.BROTLI;
+            default:
+                return null;
+        }
+    }
+}
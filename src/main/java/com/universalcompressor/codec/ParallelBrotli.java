@@ -0,0 +1,354 @@
+package com.universalcompressor.codec;
+
+import com.universalcompressor.io.BufferPool;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.brotli.dec.BrotliInputStream;
+import org.brotli.enc.BrotliOutputStream;
+import org.brotli.enc.Encoder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Block-parallel Brotli for large text assets.
+ *
+ * The input is split into fixed-size blocks that are encoded as independent Brotli
+ * streams on all cores. Because the blocks are independent they can also be decoded in
+ * parallel. The container is:
+ * <pre>
+ *   header: u32 magic "UCBR"   u8 version   u8 quality   u8 window   u8 reserved   u32 block size
+ *   block data, one Brotli stream per block
+ *   index:  { u32 compressed size, u32 raw size } * blocks
+ *   footer: u32 block count   u32 magic "UCBR"
+ * </pre>
+ * All integers are little-endian. Small inputs still use a plain Brotli stream.
+ */
+public final class ParallelBrotli {
+    private static final Logger logger = LoggerFactory.getLogger(ParallelBrotli.class);
+
+    public static final int MAGIC = 0x52424355; // "UCBR" little-endian
+    public static final int BLOCK_SIZE = 16 * 1024 * 1024; // matches the 16MB Brotli window
+    public static final long PARALLEL_THRESHOLD = 32L * 1024 * 1024;
+
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int FOOTER_SIZE = 8;
+    private static final int ENTRY_SIZE = 8;
+
+    private ParallelBrotli() {
+    }
+
+    /**
+     * Picks a Brotli quality for the input size so that large files do not fall into the
+     * multi-minute quality 11 path. Quality 11 is roughly 10x slower than quality 9 and
+     * manages only about 1MB/s, and inputs below {@link #PARALLEL_THRESHOLD} are encoded
+     * as a single stream, so it is kept for files of a few MB.
+     * @param inputSize Size of the input in bytes
+     * @param maxQuality Upper bound, normally the configured quality
+     */
+    public static int qualityFor(long inputSize, int maxQuality) {
+        int quality;
+        if (inputSize <= 4L * 1024 * 1024) {
+            quality = 11;
+        } else if (inputSize <= 128L * 1024 * 1024) {
+            quality = 9;
+        } else if (inputSize <= 512L * 1024 * 1024) {
+            quality = 7;
+        } else {
+            quality = 5;
+        }
+        return Math.min(quality, maxQuality);
+    }
+
+    /**
+     * Checks whether a file starts with the parallel Brotli container header.
+     */
+    public static boolean isParallelBrotli(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE + FOOTER_SIZE) {
+                return false;
+            }
+            return SeekableZstd.readFully(channel, 0, 4).getInt(0) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Compresses a file into the parallel container.
+     * @param inputFile The file to compress
+     * @param outputFile The destination file
+     * @param quality Brotli quality (0-11)
+     * @param window Brotli window bits (10-24)
+     * @param threads Number of encoder threads
+     * @return The size of the output in bytes
+     */
+    public static long compress(File inputFile, File outputFile, int quality, int window, int threads) throws IOException {
+        long inputSize = inputFile.length();
+        int blocks = (int) Math.max(1, (inputSize + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        int[] compressedSizes = new int[blocks];
+        int[] rawSizes = new int[blocks];
+        BufferPool pool = BufferPool.shared();
+        ExecutorService executor = newExecutor("brotli-encoder", threads);
+
+        Encoder.Parameters params = new Encoder.Parameters()
+            .setQuality(quality)
+            .setWindow(window)
+            .setMode(Encoder.Mode.TEXT);
+
+        try (FileChannel inChannel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+             FileChannel outChannel = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).put((byte) VERSION).put((byte) quality).put((byte) window).put((byte) 0)
+                .putInt(BLOCK_SIZE).flip();
+            SeekableZstdWriter.writeFully(outChannel, header);
+
+            // Sliding window of in-flight blocks, written strictly in order
+            Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+            int nextToWrite = 0;
+            long position = 0;
+            try {
+                for (int block = 0; block < blocks; block++) {
+                    int size = (int) Math.min(BLOCK_SIZE, inputSize - position);
+                    long blockStart = position;
+                    rawSizes[block] = size;
+                    inFlight.addLast(executor.submit(() -> encodeBlock(inChannel, blockStart, size, params, pool)));
+                    position += size;
+
+                    if (inFlight.size() >= Math.max(1, threads)) {
+                        byte[] encoded = SeekableZstdWriter.await(inFlight.pollFirst());
+                        SeekableZstdWriter.writeFully(outChannel, ByteBuffer.wrap(encoded));
+                        compressedSizes[nextToWrite++] = encoded.length;
+                    }
+                }
+                while (!inFlight.isEmpty()) {
+                    byte[] encoded = SeekableZstdWriter.await(inFlight.pollFirst());
+                    SeekableZstdWriter.writeFully(outChannel, ByteBuffer.wrap(encoded));
+                    compressedSizes[nextToWrite++] = encoded.length;
+                }
+            } finally {
+                SeekableZstdWriter.awaitQuietly(new ArrayList<>(inFlight));
+            }
+
+            ByteBuffer index = ByteBuffer.allocate(blocks * ENTRY_SIZE + FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < blocks; i++) {
+                index.putInt(compressedSizes[i]).putInt(rawSizes[i]);
+            }
+            index.putInt(blocks).putInt(MAGIC).flip();
+            SeekableZstdWriter.writeFully(outChannel, index);
+
+            long outputSize = outChannel.size();
+            logger.debug("Encoded {} Brotli blocks at quality {} ({} -> {} bytes)",
+                blocks, quality, inputSize, outputSize);
+            return outputSize;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static byte[] encodeBlock(FileChannel inChannel, long position, int size,
+                                      Encoder.Parameters params, BufferPool pool) throws IOException {
+        try (BufferPool.Lease<byte[]> lease = pool.array(size)) {
+            byte[] data = lease.get();
+            SeekableZstd.readFully(inChannel, position, data, size);
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream(Math.max(1024, size / 4));
+            try (OutputStream brotliOS = new BrotliOutputStream(encoded, params)) {
+                brotliOS.write(data, 0, size);
+            }
+            return encoded.toByteArray();
+        }
+    }
+
+    /**
+     * Decompresses a parallel container, decoding blocks concurrently and writing each
+     * block directly at its final offset.
+     * @return The decompressed size in bytes
+     */
+    public static long decompress(File inputFile, File outputFile, int threads) throws IOException {
+        BufferPool pool = BufferPool.shared();
+        ExecutorService executor = newExecutor("brotli-decoder", threads);
+
+        try (FileChannel inChannel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+             FileChannel outChannel = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            ByteBuffer index = readIndex(inChannel);
+            int blocks = index.capacity() / ENTRY_SIZE;
+
+            List<Future<?>> futures = new ArrayList<>(blocks);
+            Semaphore inFlight = new Semaphore(Math.max(1, threads) * 2);
+            long compressedOffset = HEADER_SIZE;
+            long rawOffset = 0;
+            try {
+                for (int block = 0; block < blocks; block++) {
+                    int compressedSize = index.getInt(block * ENTRY_SIZE);
+                    int rawSize = index.getInt(block * ENTRY_SIZE + 4);
+                    long blockIn = compressedOffset;
+                    long blockOut = rawOffset;
+                    inFlight.acquire();
+                    futures.add(executor.submit(() -> {
+                        try {
+                            decodeBlock(inChannel, outChannel, blockIn, compressedSize, blockOut, rawSize, pool);
+                            return null;
+                        } finally {
+                            inFlight.release();
+                        }
+                    }));
+                    compressedOffset += compressedSize;
+                    rawOffset += rawSize;
+                }
+                for (Future<?> future : futures) {
+                    SeekableZstdWriter.await(future);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while decompressing");
+            } finally {
+                SeekableZstdWriter.awaitQuietly(futures);
+            }
+            return rawOffset;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Opens a sequential stream over the decompressed contents of a container, decoding
+     * one block at a time. Used where a plain InputStream is needed (e.g. verification).
+     */
+    public static InputStream openDecompressing(File inputFile) throws IOException {
+        FileChannel inChannel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer index = readIndex(inChannel);
+            int blocks = index.capacity() / ENTRY_SIZE;
+
+            Enumeration<InputStream> streams = new Enumeration<InputStream>() {
+                private int block;
+                private long offset = HEADER_SIZE;
+
+                @Override
+                public boolean hasMoreElements() {
+                    return block < blocks;
+                }
+
+                @Override
+                public InputStream nextElement() {
+                    int compressedSize = index.getInt(block * ENTRY_SIZE);
+                    block++;
+                    try {
+                        ByteBuffer data = SeekableZstd.readFully(inChannel, offset, compressedSize);
+                        offset += compressedSize;
+                        return new BrotliInputStream(new ByteArrayInputStream(data.array(), 0, compressedSize));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            };
+            return new SequenceInputStream(streams) {
+                @Override
+                public int read() throws IOException {
+                    try {
+                        return super.read();
+                    } catch (UncheckedIOException e) {
+                        throw e.getCause();
+                    }
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    try {
+                        return super.read(b, off, len);
+                    } catch (UncheckedIOException e) {
+                        throw e.getCause();
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inChannel.close();
+                    }
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            inChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the block index and checks it against the file before any block is decoded.
+     */
+    private static ByteBuffer readIndex(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < HEADER_SIZE + FOOTER_SIZE) {
+            throw new IOException("Not a parallel Brotli container (too short)");
+        }
+        ByteBuffer footer = SeekableZstd.readFully(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+        if (footer.getInt(4) != MAGIC) {
+            throw new IOException("Not a parallel Brotli container (missing footer)");
+        }
+        int blocks = footer.getInt(0);
+        long indexStart = size - FOOTER_SIZE - (long) blocks * ENTRY_SIZE;
+        if (blocks < 0 || indexStart < HEADER_SIZE) {
+            throw new IOException("Corrupt parallel Brotli index");
+        }
+        ByteBuffer index = SeekableZstd.readFully(channel, indexStart, blocks * ENTRY_SIZE);
+        long compressedTotal = 0;
+        for (int block = 0; block < blocks; block++) {
+            int compressedSize = index.getInt(block * ENTRY_SIZE);
+            int rawSize = index.getInt(block * ENTRY_SIZE + 4);
+            if (compressedSize < 0 || rawSize < 0 || rawSize > BLOCK_SIZE) {
+                throw new IOException("Corrupt parallel Brotli index: block " + block + " has an invalid size");
+            }
+            compressedTotal += compressedSize;
+        }
+        if (HEADER_SIZE + compressedTotal != indexStart) {
+            throw new IOException("Corrupt parallel Brotli index: block sizes do not match file size");
+        }
+        return index;
+    }
+
+    private static void decodeBlock(FileChannel inChannel, FileChannel outChannel, long compressedOffset,
+                                    int compressedSize, long rawOffset, int rawSize, BufferPool pool) throws IOException {
+        try (BufferPool.Lease<byte[]> src = pool.array(compressedSize);
+             BufferPool.Lease<byte[]> dst = pool.array(rawSize)) {
+            SeekableZstd.readFully(inChannel, compressedOffset, src.get(), compressedSize);
+            byte[] raw = dst.get();
+            int decoded = 0;
+            try (InputStream brotliIS = new BrotliInputStream(new ByteArrayInputStream(src.get(), 0, compressedSize))) {
+                int n;
+                while (decoded < rawSize && (n = brotliIS.read(raw, decoded, rawSize - decoded)) != -1) {
+                    decoded += n;
+                }
+                if (decoded != rawSize || brotliIS.read() != -1) {
+                    throw new IOException("Brotli block at offset " + compressedOffset + " has the wrong length");
+                }
+            }
+            ByteBuffer buf = ByteBuffer.wrap(raw, 0, rawSize);
+            while (buf.hasRemaining()) {
+                outChannel.write(buf, rawOffset + buf.position());
+            }
+        }
+    }
+
+    private static ExecutorService newExecutor(String name, int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+}
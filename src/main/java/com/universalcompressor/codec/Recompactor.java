@@ -0,0 +1,165 @@
+package com.universalcompressor.codec;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Re-encodes fast-tier assets at a high zstd level in parallel, within a CPU and memory
+ * budget. Files are processed largest first so the longest jobs start early; each job
+ * reserves its estimated encoder memory before it starts and releases it when done.
+ */
+public class Recompactor {
+    private static final Logger logger = LoggerFactory.getLogger(Recompactor.class);
+
+    private final int level;
+    private final int maxThreads;
+    private final int maxMemoryMb;
+
+    /**
+     * Totals of a recompaction run.
+     */
+    public static final class Summary {
+        private final int replaced;
+        private final int kept;
+        private final int failed;
+        private final long bytesSaved;
+
+        Summary(int replaced, int kept, int failed, long bytesSaved) {
+            this.replaced = replaced;
+            this.kept = kept;
+            this.failed = failed;
+            this.bytesSaved = bytesSaved;
+        }
+
+        public int getReplaced() {
+            return replaced;
+        }
+
+        public int getKept() {
+            return kept;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public long getBytesSaved() {
+            return bytesSaved;
+        }
+    }
+
+    /**
+     * @param level Target Zstandard level
+     * @param maxThreads CPU budget: total compression threads across all jobs
+     * @param maxMemoryMb Memory budget for encoder state across all jobs
+     */
+    public Recompactor(int level, int maxThreads, int maxMemoryMb) {
+        this.level = level;
+        this.maxThreads = Math.max(1, maxThreads);
+        this.maxMemoryMb = Math.max(1, maxMemoryMb);
+    }
+
+    /**
+     * Rough upper bound of the memory one encoder needs at a level, in MB. Higher levels
+     * use larger windows and match tables; levels 20+ need the ultra window.
+     */
+    static int estimateMemoryMb(int level, int workers) {
+        int perContext;
+        if (level <= 5) {
+            perContext = 16;
+        } else if (level <= 12) {
+            perContext = 64;
+        } else if (level <= 16) {
+            perContext = 128;
+        } else if (level <= 19) {
+            perContext = 256;
+        } else {
+            perContext = 1024;
+        }
+        // Plus the decoder window and the pooled copy buffer
+        return perContext * Math.max(1, workers) + 16;
+    }
+
+    /**
+     * Returns the files among the candidates that carry a fast-tier tag.
+     */
+    public static List<File> selectFastTier(List<File> candidates) {
+        List<File> selected = new ArrayList<>();
+        for (File file : candidates) {
+            try {
+                TieredZstd.Tag tag = TieredZstd.readTag(file);
+                if (tag != null && tag.getTier() == TieredZstd.TIER_FAST) {
+                    selected.add(file);
+                }
+            } catch (IOException e) {
+                logger.warn("Cannot read {}: {}", file, e.getMessage());
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Recompacts the given fast-tier files.
+     */
+    public Summary recompactAll(List<File> files) throws InterruptedException {
+        List<File> ordered = new ArrayList<>(files);
+        ordered.sort(Comparator.comparingLong(File::length).reversed());
+
+        // With fewer files than threads, the spare threads become zstd workers
+        int jobs = Math.max(1, Math.min(maxThreads, ordered.size()));
+        int workersPerJob = maxThreads / jobs > 1 ? maxThreads / jobs : 0;
+        int permits = Math.min(maxMemoryMb, estimateMemoryMb(level, workersPerJob));
+        Semaphore memory = new Semaphore(maxMemoryMb);
+
+        AtomicInteger replaced = new AtomicInteger();
+        AtomicInteger kept = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong saved = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(jobs, r -> {
+            Thread t = new Thread(r, "recompactor");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            for (File file : ordered) {
+                executor.execute(() -> {
+                    try {
+                        memory.acquire(permits);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    try {
+                        long bytes = TieredZstd.recompact(file, level, workersPerJob);
+                        if (bytes > 0) {
+                            replaced.incrementAndGet();
+                            saved.addAndGet(bytes);
+                        } else {
+                            kept.incrementAndGet();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        failed.incrementAndGet();
+                        logger.error("Failed to recompact {}: {}", file, e.getMessage());
+                    } finally {
+                        memory.release(permits);
+                    }
+                });
+            }
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.info("Recompaction in progress: {} of {} files done",
+                    replaced.get() + kept.get() + failed.get(), ordered.size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Summary(replaced.get(), kept.get(), failed.get(), saved.get());
+    }
+}
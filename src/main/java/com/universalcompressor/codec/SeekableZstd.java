@@ -0,0 +1,191 @@
+package com.universalcompressor.codec;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Constants and seek table handling for the zstd seekable format.
+ *
+ * A seekable file is a sequence of independent zstd frames, each holding one block of
+ * the input, followed by a skippable frame that lists the compressed and decompressed
+ * size of every frame. Regular zstd decoders skip the table and see an ordinary
+ * multi-frame stream, so seekable outputs remain valid .zst files.
+ *
+ * Layout of the trailing seek table (all integers little-endian):
+ * <pre>
+ *   u32 skippable magic (0x184D2A5E)   u32 frame size
+ *   { u32 compressed size, u32 decompressed size } * frames
+ *   u32 number of frames   u8 descriptor   u32 seekable magic (0x8F92EAB1)
+ * </pre>
+ */
+public final class SeekableZstd {
+
+    public static final int SKIPPABLE_MAGIC = 0x184D2A5E;
+    public static final int SEEKABLE_MAGIC = 0x8F92EAB1;
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024; // 1MB of input per frame
+
+    private static final int FOOTER_SIZE = 9;
+    private static final int SKIPPABLE_HEADER_SIZE = 8;
+    private static final int ENTRY_SIZE = 8;
+    private static final int CHECKSUM_FLAG = 0x80;
+
+    private SeekableZstd() {
+    }
+
+    /**
+     * Frame index of a seekable file.
+     */
+    public static final class SeekTable {
+        private final long[] compressedOffsets;    // frameCount + 1 entries, absolute file offsets
+        private final long[] decompressedOffsets;  // frameCount + 1 entries
+
+        SeekTable(long[] compressedOffsets, long[] decompressedOffsets) {
+            this.compressedOffsets = compressedOffsets;
+            this.decompressedOffsets = decompressedOffsets;
+        }
+
+        public int getFrameCount() {
+            return compressedOffsets.length - 1;
+        }
+
+        public long getDecompressedSize() {
+            return decompressedOffsets[decompressedOffsets.length - 1];
+        }
+
+        public long getCompressedOffset(int frame) {
+            return compressedOffsets[frame];
+        }
+
+        public int getCompressedSize(int frame) {
+            return (int) (compressedOffsets[frame + 1] - compressedOffsets[frame]);
+        }
+
+        public long getDecompressedOffset(int frame) {
+            return decompressedOffsets[frame];
+        }
+
+        public int getDecompressedSize(int frame) {
+            return (int) (decompressedOffsets[frame + 1] - decompressedOffsets[frame]);
+        }
+
+        /**
+         * Finds the frame containing the given decompressed position.
+         * @param position Offset into the decompressed data, must be below the decompressed size
+         * @return The frame index
+         */
+        public int frameFor(long position) {
+            int idx = Arrays.binarySearch(decompressedOffsets, position);
+            if (idx < 0) {
+                idx = -idx - 2;
+            }
+            // Skip over empty frames that share a start offset
+            while (idx < getFrameCount() - 1 && decompressedOffsets[idx + 1] <= position) {
+                idx++;
+            }
+            return idx;
+        }
+    }
+
+    /**
+     * Serialises a seek table as a skippable frame.
+     * @param compressedSizes Compressed size of each frame
+     * @param decompressedSizes Decompressed size of each frame
+     * @param frameCount Number of valid entries in the arrays
+     */
+    public static byte[] encodeSeekTable(int[] compressedSizes, int[] decompressedSizes, int frameCount) {
+        int payload = frameCount * ENTRY_SIZE + FOOTER_SIZE;
+        ByteBuffer buf = ByteBuffer.allocate(SKIPPABLE_HEADER_SIZE + payload).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(SKIPPABLE_MAGIC);
+        buf.putInt(payload);
+        for (int i = 0; i < frameCount; i++) {
+            buf.putInt(compressedSizes[i]);
+            buf.putInt(decompressedSizes[i]);
+        }
+        buf.putInt(frameCount);
+        buf.put((byte) 0);
+        buf.putInt(SEEKABLE_MAGIC);
+        return buf.array();
+    }
+
+    /**
+     * Checks whether a file ends with a seekable format footer.
+     */
+    public static boolean isSeekable(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < SKIPPABLE_HEADER_SIZE + FOOTER_SIZE) {
+            return false;
+        }
+        ByteBuffer footer = readFully(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+        return footer.getInt(5) == SEEKABLE_MAGIC;
+    }
+
+    /**
+     * Reads the seek table from the end of a seekable file.
+     * @throws IOException If the file is not in the seekable format or the table is inconsistent
+     */
+    public static SeekTable readSeekTable(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (!isSeekable(channel)) {
+            throw new IOException("Not a seekable zstd file (missing seek table footer)");
+        }
+
+        ByteBuffer footer = readFully(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+        long frameCount = Integer.toUnsignedLong(footer.getInt(0));
+        int descriptor = footer.get(4) & 0xFF;
+        int entrySize = ENTRY_SIZE + ((descriptor & CHECKSUM_FLAG) != 0 ? 4 : 0);
+        long tableSize = frameCount * entrySize + FOOTER_SIZE;
+        long tableStart = size - tableSize - SKIPPABLE_HEADER_SIZE;
+        if (tableStart < 0 || tableSize > Integer.MAX_VALUE) {
+            throw new IOException("Corrupt seek table: " + frameCount + " frames do not fit in " + size + " bytes");
+        }
+
+        ByteBuffer header = readFully(channel, tableStart, SKIPPABLE_HEADER_SIZE);
+        if (header.getInt(0) != SKIPPABLE_MAGIC || Integer.toUnsignedLong(header.getInt(4)) != tableSize) {
+            throw new IOException("Corrupt seek table: bad skippable frame header");
+        }
+
+        ByteBuffer entries = readFully(channel, tableStart + SKIPPABLE_HEADER_SIZE, (int) (tableSize - FOOTER_SIZE));
+        int frames = (int) frameCount;
+        long[] compressedOffsets = new long[frames + 1];
+        long[] decompressedOffsets = new long[frames + 1];
+        for (int i = 0; i < frames; i++) {
+            int base = i * entrySize;
+            compressedOffsets[i + 1] = compressedOffsets[i] + Integer.toUnsignedLong(entries.getInt(base));
+            decompressedOffsets[i + 1] = decompressedOffsets[i] + Integer.toUnsignedLong(entries.getInt(base + 4));
+        }
+
+        // Frames end where the seek table starts; anything before the first frame
+        // (e.g. a leading skippable header) shifts every compressed offset.
+        long dataStart = tableStart - compressedOffsets[frames];
+        if (dataStart < 0) {
+            throw new IOException("Corrupt seek table: frame sizes exceed file size");
+        }
+        for (int i = 0; i <= frames; i++) {
+            compressedOffsets[i] += dataStart;
+        }
+        return new SeekTable(compressedOffsets, decompressedOffsets);
+    }
+
+    static void readFully(FileChannel channel, long position, byte[] dst, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(dst, 0, length);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new EOFException("Unexpected end of file at offset " + (position + buf.position()));
+            }
+        }
+    }
+
+    static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new EOFException("Unexpected end of file at offset " + (position + buf.position()));
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+}
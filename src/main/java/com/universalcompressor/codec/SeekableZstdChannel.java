@@ -0,0 +1,165 @@
+package com.universalcompressor.codec;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.universalcompressor.io.BufferPool;
+
+import com.github.luben.zstd.ZstdDecompressCtx;
+
+/**
+ * Read-only random access over a file in the zstd seekable format. Only the frames
+ * covering the requested range are decoded, and recently decoded frames are kept in a
+ * small LRU cache so that neighbouring reads do not decode the same frame twice.
+ *
+ * Instances are safe for use by multiple threads; reads are serialised.
+ */
+public class SeekableZstdChannel implements SeekableByteChannel {
+
+    public static final int DEFAULT_CACHED_FRAMES = 32;
+
+    private final FileChannel channel;
+    private final SeekableZstd.SeekTable table;
+    private final ZstdDecompressCtx decompressor = new ZstdDecompressCtx();
+    private final Map<Integer, byte[]> cache;
+    private long position;
+    private boolean open = true;
+
+    private SeekableZstdChannel(FileChannel channel, int cachedFrames) throws IOException {
+        this.channel = channel;
+        this.table = SeekableZstd.readSeekTable(channel);
+        this.cache = new LinkedHashMap<Integer, byte[]>(cachedFrames * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+                return size() > cachedFrames;
+            }
+        };
+    }
+
+    /**
+     * Opens a seekable compressed file with the default cache size.
+     */
+    public static SeekableZstdChannel open(Path path) throws IOException {
+        return open(path, DEFAULT_CACHED_FRAMES);
+    }
+
+    /**
+     * Opens a seekable compressed file.
+     * @param path The .zst file written by {@link SeekableZstdWriter}
+     * @param cachedFrames Number of decoded frames to keep in memory
+     */
+    public static SeekableZstdChannel open(Path path, int cachedFrames) throws IOException {
+        FileChannel fc = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new SeekableZstdChannel(fc, Math.max(1, cachedFrames));
+        } catch (IOException e) {
+            fc.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a stream over the decompressed contents starting at the given offset.
+     */
+    public static InputStream newInputStream(Path path, long offset) throws IOException {
+        SeekableZstdChannel ch = open(path);
+        ch.position(offset);
+        return Channels.newInputStream(ch);
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        long size = table.getDecompressedSize();
+        if (position >= size) {
+            return -1;
+        }
+
+        int total = 0;
+        while (dst.hasRemaining() && position < size) {
+            int frame = table.frameFor(position);
+            byte[] block = frame(frame);
+            int offsetInBlock = (int) (position - table.getDecompressedOffset(frame));
+            int n = Math.min(dst.remaining(), block.length - offsetInBlock);
+            dst.put(block, offsetInBlock, n);
+            position += n;
+            total += n;
+        }
+        return total;
+    }
+
+    private byte[] frame(int frame) throws IOException {
+        byte[] block = cache.get(frame);
+        if (block == null) {
+            int compressedSize = table.getCompressedSize(frame);
+            try (BufferPool.Lease<byte[]> src = BufferPool.shared().array(compressedSize)) {
+                SeekableZstd.readFully(channel, table.getCompressedOffset(frame), src.get(), compressedSize);
+                // Decoded frames are owned by the cache, so they are not pooled
+                block = new byte[table.getDecompressedSize(frame)];
+                decompressor.decompressByteArray(block, 0, block.length, src.get(), 0, compressedSize);
+            } catch (RuntimeException e) {
+                throw new IOException("Failed to decode frame " + frame + ": " + e.getMessage(), e);
+            }
+            cache.put(frame, block);
+        }
+        return block;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position: " + newPosition);
+        }
+        this.position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return table.getDecompressedSize();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (open) {
+            open = false;
+            cache.clear();
+            decompressor.close();
+            channel.close();
+        }
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
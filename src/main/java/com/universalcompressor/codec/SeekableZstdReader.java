@@ -0,0 +1,106 @@
+package com.universalcompressor.codec;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import com.universalcompressor.io.BufferPool;
+
+import com.github.luben.zstd.ZstdDecompressCtx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resumable decompression of files in the zstd seekable format. Frames are decoded in
+ * order and checkpointed to a {@link CheckpointJournal}; a failed or killed run leaves
+ * the partial output and journal in place so the next run continues from the last
+ * durable frame.
+ */
+public final class SeekableZstdReader {
+    private static final Logger logger = LoggerFactory.getLogger(SeekableZstdReader.class);
+
+    private SeekableZstdReader() {
+    }
+
+    /**
+     * Checks whether a file carries a seekable format seek table.
+     */
+    public static boolean isSeekable(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return SeekableZstd.isSeekable(channel);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Decompresses a seekable file, resuming an earlier interrupted run if possible.
+     * @param inputFile The seekable .zst file
+     * @param outputFile The destination file
+     * @return The decompressed size in bytes
+     */
+    public static long decompress(File inputFile, File outputFile) throws IOException {
+        String fingerprint = "seekable-zstd decompress " + inputFile.length() + " " + inputFile.lastModified();
+
+        try (FileChannel inChannel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+             FileChannel outChannel = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+                 StandardOpenOption.READ, StandardOpenOption.WRITE);
+             CheckpointJournal journal = CheckpointJournal.open(CheckpointJournal.journalFor(outputFile), fingerprint);
+             ZstdDecompressCtx decompressor = new ZstdDecompressCtx()) {
+
+            SeekableZstd.SeekTable table = SeekableZstd.readSeekTable(inChannel);
+            BufferPool pool = BufferPool.shared();
+
+            // Each record holds the number of frames that were durable at that checkpoint
+            List<long[]> records = journal.getRecords();
+            int frame = records.isEmpty() ? 0 : (int) records.get(records.size() - 1)[0];
+            if (frame > table.getFrameCount() || outChannel.size() < table.getDecompressedOffset(frame)) {
+                logger.warn("Output {} does not match its journal; restarting decompression", outputFile.getName());
+                journal.reset(fingerprint);
+                frame = 0;
+            } else if (frame > 0) {
+                logger.info("Resuming decompression of {} at frame {} of {}",
+                    inputFile.getName(), frame, table.getFrameCount());
+            }
+            long outputPosition = table.getDecompressedOffset(frame);
+            outChannel.truncate(outputPosition);
+            outChannel.position(outputPosition);
+
+            long sinceCheckpoint = 0;
+            for (; frame < table.getFrameCount(); frame++) {
+                int compressedSize = table.getCompressedSize(frame);
+                int decompressedSize = table.getDecompressedSize(frame);
+                try (BufferPool.Lease<byte[]> src = pool.array(compressedSize);
+                     BufferPool.Lease<byte[]> dst = pool.array(decompressedSize)) {
+                    SeekableZstd.readFully(inChannel, table.getCompressedOffset(frame), src.get(), compressedSize);
+                    int decoded;
+                    try {
+                        decoded = decompressor.decompressByteArray(dst.get(), 0, decompressedSize,
+                            src.get(), 0, compressedSize);
+                    } catch (RuntimeException e) {
+                        throw new IOException("Failed to decode frame " + frame + ": " + e.getMessage(), e);
+                    }
+                    if (decoded != decompressedSize) {
+                        throw new IOException("Frame " + frame + " decoded to " + decoded
+                            + " bytes, expected " + decompressedSize);
+                    }
+                    SeekableZstdWriter.writeFully(outChannel, ByteBuffer.wrap(dst.get(), 0, decoded));
+                }
+                sinceCheckpoint += decompressedSize;
+
+                if (sinceCheckpoint >= SeekableZstdWriter.CHECKPOINT_INTERVAL) {
+                    outChannel.force(false);
+                    journal.append(Collections.singletonList(new long[] {frame + 1}));
+                    sinceCheckpoint = 0;
+                }
+            }
+
+            outChannel.force(true);
+            journal.delete();
+            return table.getDecompressedSize();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.universalcompressor.codec;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.universalcompressor.io.BufferPool;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes files in the zstd seekable format (see {@link SeekableZstd}). The input is cut
+ * into fixed-size blocks which are compressed as independent frames on all cores and
+ * written in order, followed by the seek table. Long runs are checkpointed so that an
+ * interrupted compression can be resumed.
+ */
+public class SeekableZstdWriter {
+    private static final Logger logger = LoggerFactory.getLogger(SeekableZstdWriter.class);
+
+    // Force completed frames to disk and journal them after this much input
+    static final long CHECKPOINT_INTERVAL = 64L * 1024 * 1024;
+
+    private final int level;
+    private final int blockSize;
+    private final int threads;
+
+    public SeekableZstdWriter(int level, int blockSize, int threads) {
+        this.level = level;
+        this.blockSize = blockSize;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Compresses a file into the seekable format. Progress is checkpointed to a
+     * {@link CheckpointJournal} next to the output; if a journal from an interrupted run
+     * of the same input and parameters exists, compression resumes after the last
+     * durable frame instead of starting over.
+     * @param inputFile The file to compress
+     * @param outputFile The destination .zst file
+     * @return The size of the output in bytes
+     */
+    public long compress(File inputFile, File outputFile) throws IOException {
+        long inputSize = inputFile.length();
+        int frameCapacity = (int) Math.max(1, (inputSize + blockSize - 1) / blockSize);
+        int[] compressedSizes = new int[frameCapacity];
+        int[] decompressedSizes = new int[frameCapacity];
+        int frames = 0;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "seekable-zstd");
+            t.setDaemon(true);
+            return t;
+        });
+        Queue<ZstdCompressCtx> created = new ConcurrentLinkedQueue<>();
+        ThreadLocal<ZstdCompressCtx> contexts = ThreadLocal.withInitial(() -> {
+            ZstdCompressCtx ctx = new ZstdCompressCtx().setLevel(level).setChecksum(true);
+            created.add(ctx);
+            return ctx;
+        });
+
+        BufferPool pool = BufferPool.shared();
+        String fingerprint = "seekable-zstd compress " + inputSize + " " + inputFile.lastModified()
+            + " " + level + " " + blockSize;
+
+        try (FileChannel inChannel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+             FileChannel outChannel = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+                 StandardOpenOption.READ, StandardOpenOption.WRITE);
+             CheckpointJournal journal = CheckpointJournal.open(CheckpointJournal.journalFor(outputFile), fingerprint)) {
+
+            // Recover durable frames from an interrupted run
+            long position = 0;
+            long outputPosition = 0;
+            for (long[] record : journal.getRecords()) {
+                compressedSizes[frames] = (int) record[0];
+                decompressedSizes[frames] = (int) record[1];
+                outputPosition += record[0];
+                position += record[1];
+                frames++;
+            }
+            if (frames > 0 && outChannel.size() >= outputPosition) {
+                logger.info("Resuming compression of {} at {} of {} bytes ({} frames already written)",
+                    inputFile.getName(), position, inputSize, frames);
+            } else if (frames > 0) {
+                logger.warn("Output {} is shorter than its journal; restarting compression", outputFile.getName());
+                journal.reset(fingerprint);
+                frames = 0;
+                position = 0;
+                outputPosition = 0;
+            }
+            outChannel.truncate(outputPosition);
+            outChannel.position(outputPosition);
+
+            List<long[]> pending = new ArrayList<>();
+            long sinceCheckpoint = 0;
+            while (position < inputSize) {
+                // Compress up to one block per worker at a time so memory stays bounded
+                List<Future<Integer>> batch = new ArrayList<>(threads);
+                List<Integer> batchSizes = new ArrayList<>(threads);
+                List<BufferPool.Lease<byte[]>> leases = new ArrayList<>(threads * 2);
+                try {
+                    for (int i = 0; i < threads && position < inputSize; i++) {
+                        int size = (int) Math.min(blockSize, inputSize - position);
+                        BufferPool.Lease<byte[]> src = pool.array(size);
+                        leases.add(src);
+                        BufferPool.Lease<byte[]> dst = pool.array((int) Zstd.compressBound(size));
+                        leases.add(dst);
+                        SeekableZstd.readFully(inChannel, position, src.get(), size);
+                        batch.add(executor.submit(() -> contexts.get().compressByteArray(
+                            dst.get(), 0, dst.get().length, src.get(), 0, size)));
+                        batchSizes.add(size);
+                        position += size;
+                    }
+
+                    for (int i = 0; i < batch.size(); i++) {
+                        int frameSize = await(batch.get(i));
+                        writeFully(outChannel, ByteBuffer.wrap(leases.get(i * 2 + 1).get(), 0, frameSize));
+                        compressedSizes[frames] = frameSize;
+                        decompressedSizes[frames] = batchSizes.get(i);
+                        pending.add(new long[] {frameSize, batchSizes.get(i)});
+                        sinceCheckpoint += batchSizes.get(i);
+                        frames++;
+                    }
+                } finally {
+                    // Buffers go back to the pool only once no worker can still touch them
+                    awaitQuietly(batch);
+                    leases.forEach(BufferPool.Lease::close);
+                }
+
+                if (sinceCheckpoint >= CHECKPOINT_INTERVAL) {
+                    checkpoint(outChannel, journal, pending);
+                    sinceCheckpoint = 0;
+                }
+            }
+
+            writeFully(outChannel, ByteBuffer.wrap(SeekableZstd.encodeSeekTable(compressedSizes, decompressedSizes, frames)));
+            outChannel.force(true);
+            journal.delete();
+
+            long outputSize = outChannel.size();
+            logger.debug("Wrote {} seekable frames ({} -> {} bytes) to {}",
+                frames, inputSize, outputSize, outputFile.getAbsolutePath());
+            return outputSize;
+        } finally {
+            shutdownAndWait(executor);
+            created.forEach(ZstdCompressCtx::close);
+        }
+    }
+
+    static void checkpoint(FileChannel outChannel, CheckpointJournal journal, List<long[]> pending) throws IOException {
+        // The output must be durable before the journal claims it is
+        outChannel.force(false);
+        journal.append(pending);
+        pending.clear();
+    }
+
+    static void shutdownAndWait(ExecutorService executor) {
+        executor.shutdownNow();
+        try {
+            // Native contexts may only be released once no worker is using them
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static void awaitQuietly(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException | CancellationException e) {
+                // Already reported by the caller
+            }
+        }
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    /**
+     * Waits for a block encoded or decoded on a worker. An interrupt is not swallowed: it
+     * is restored and reported as an InterruptedIOException.
+     */
+    static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a block");
+        } catch (ExecutionException e) {
+            throw new IOException("Block failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
@@ -0,0 +1,516 @@
+package com.universalcompressor.codec;
+
+import com.universalcompressor.io.BufferPool;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.compress.utils.BoundedInputStream;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Zstandard with constant runs taken out. Render caches (EXR, USD, Alembic) often contain
+ * large zero-filled or constant regions; these are recorded as run descriptors instead of
+ * being fed through the encoder, and on decompression zero runs become sparse holes and
+ * other runs are filled directly.
+ *
+ * Runs are detected on aligned {@link #BLOCK_SIZE} blocks. Layout (little-endian):
+ * <pre>
+ *   header:  u32 magic "UCSP"   u8 version   u8 block shift   u8 tier   u8 level   u64 original size
+ *   zstd frame holding every byte outside the runs, in file order
+ *   runs:    per run u64 offset   u64 length   u8 value   7 bytes reserved
+ *   footer:  u64 run table offset   u32 run count   u32 magic "UCSP"
+ * </pre>
+ * The footer lets the encoder work in a single pass; the decoder reads it first. The tier
+ * byte is 0 for untiered files and {@link TieredZstd} tier + 1 otherwise, so that
+ * {@link Recompactor} can raise the level of fast-tier containers like plain tiered files.
+ *
+ * Stock zstd tools cannot read the container, so it has its own {@link #EXTENSION} and is
+ * only written when the zstd-sparse method is asked for.
+ */
+public final class SparseZstd {
+    private static final Logger logger = LoggerFactory.getLogger(SparseZstd.class);
+
+    public static final int MAGIC = 0x50534355; // "UCSP" little-endian
+    public static final String EXTENSION = ".ucsp";
+    public static final int UNTIERED = -1;
+    public static final int BLOCK_SIZE = 4096;
+    public static final long DEFAULT_MIN_RUN = 64 * 1024;
+
+    private static final int VERSION = 1;
+    private static final int BLOCK_SHIFT = 12;
+    private static final int HEADER_SIZE = 16;
+    private static final int TIER_OFFSET = 6;
+    private static final int RUN_SIZE = 24;
+    private static final int FOOTER_SIZE = 16;
+    private static final int BUFFER_SIZE = 8 * 1024 * 1024; // a multiple of BLOCK_SIZE
+
+    private SparseZstd() {
+    }
+
+    /**
+     * A constant region of the original file.
+     */
+    static final class Run {
+        final long offset;
+        final long length;
+        final byte value;
+
+        Run(long offset, long length, byte value) {
+            this.offset = offset;
+            this.length = length;
+            this.value = value;
+        }
+
+        long end() {
+            return offset + length;
+        }
+    }
+
+    /**
+     * Checks whether a file starts with the sparse container magic.
+     */
+    public static boolean isSparse(File file) throws IOException {
+        if (file.length() < HEADER_SIZE + FOOTER_SIZE) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return SeekableZstd.readFully(channel, 0, 4).getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Compresses a file, replacing constant runs of at least minRun bytes with descriptors.
+     * @param level Zstandard level for the remaining data
+     * @param workers Number of zstd worker threads (0 for single-threaded)
+     * @param minRun Shortest run worth a descriptor; shorter runs are compressed in place
+     * @return The compressed size in bytes
+     */
+    public static long compress(File inputFile, File outputFile, int level, int workers, long minRun) throws IOException {
+        return compress(inputFile, outputFile, level, UNTIERED, workers, minRun);
+    }
+
+    /**
+     * Compresses a file as above and tags it with its tier.
+     * @param tier {@link TieredZstd#TIER_FAST}, {@link TieredZstd#TIER_COMPACTED} or {@link #UNTIERED}
+     */
+    public static long compress(File inputFile, File outputFile, int level, int tier, int workers,
+                                long minRun) throws IOException {
+        long size = inputFile.length();
+        List<Run> runs = new ArrayList<>();
+        long denseBytes;
+
+        try (FileChannel in = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+             FileOutputStream fos = new FileOutputStream(outputFile);
+             BufferPool.Lease<byte[]> lease = BufferPool.shared().array(BUFFER_SIZE)) {
+            writeHeader(fos, size, level, tier);
+
+            RunWriter writer = new RunWriter(runs, Math.max(BLOCK_SIZE, minRun));
+            try (ZstdOutputStream zstdOS = openDenseOutput(fos, size, level, workers)) {
+                writer.out = zstdOS;
+
+                byte[] buffer = lease.get();
+                ByteBuffer view = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+                long position = 0;
+                int n;
+                while ((n = readFully(in, buffer, BUFFER_SIZE, position)) > 0) {
+                    int denseFrom = -1;
+                    for (int off = 0; off < n; off += BLOCK_SIZE) {
+                        int len = Math.min(BLOCK_SIZE, n - off);
+                        if (len == BLOCK_SIZE && isConstant(view, off)) {
+                            if (denseFrom >= 0) {
+                                zstdOS.write(buffer, denseFrom, off - denseFrom);
+                                denseFrom = -1;
+                            }
+                            writer.extend(position + off, len, buffer[off]);
+                        } else if (denseFrom < 0) {
+                            writer.flush();
+                            denseFrom = off;
+                        }
+                    }
+                    if (denseFrom >= 0) {
+                        zstdOS.write(buffer, denseFrom, n - denseFrom);
+                    }
+                    position += n;
+                }
+                writer.flush();
+            }
+
+            denseBytes = size - writeTable(fos, runs);
+        }
+
+        logger.debug("{}: {} constant runs ({} bytes) kept out of the encoder, {} bytes compressed",
+            inputFile.getName(), runs.size(), size - denseBytes, denseBytes);
+        return outputFile.length();
+    }
+
+    private static void writeHeader(OutputStream fos, long size, int level, int tier) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).put((byte) VERSION).put((byte) BLOCK_SHIFT)
+            .put((byte) (tier + 1)).put((byte) (tier == UNTIERED ? 0 : level)).putLong(size);
+        fos.write(header.array());
+    }
+
+    /**
+     * Opens the zstd stream for the dense data. It is closed before the run table is
+     * written, so the file stays open underneath it.
+     */
+    private static ZstdOutputStream openDenseOutput(FileOutputStream fos, long size, int level,
+                                                    int workers) throws IOException {
+        ZstdOutputStream zstdOS = new ZstdOutputStream(new BufferedOutputStream(new FilterOutputStream(fos) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        }, 1024 * 1024), level);
+        zstdOS.setChecksum(true);
+        ZstdWindow.configure(zstdOS, size, level, workers);
+        return zstdOS;
+    }
+
+    /**
+     * Appends the run table and footer at the current end of the file.
+     * @return Total length of the runs
+     */
+    private static long writeTable(FileOutputStream fos, List<Run> runs) throws IOException {
+        long tableOffset = fos.getChannel().position();
+        long runBytes = 0;
+        ByteBuffer table = ByteBuffer.allocate(runs.size() * RUN_SIZE + FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (Run run : runs) {
+            table.putLong(run.offset).putLong(run.length).put(run.value).put(new byte[RUN_SIZE - 17]);
+            runBytes += run.length;
+        }
+        table.putLong(tableOffset).putInt(runs.size()).putInt(MAGIC);
+        fos.write(table.array());
+        return runBytes;
+    }
+
+    /**
+     * Collects consecutive constant blocks into runs. Runs shorter than the minimum go
+     * back into the compressed stream at their original position.
+     */
+    private static final class RunWriter {
+        private final List<Run> runs;
+        private final long minRun;
+        private OutputStream out;
+        private long start;
+        private long length;
+        private byte value;
+
+        RunWriter(List<Run> runs, long minRun) {
+            this.runs = runs;
+            this.minRun = minRun;
+        }
+
+        void extend(long offset, int len, byte blockValue) throws IOException {
+            if (length > 0 && (blockValue != value || offset != start + length)) {
+                flush();
+            }
+            if (length == 0) {
+                start = offset;
+                value = blockValue;
+            }
+            length += len;
+        }
+
+        void flush() throws IOException {
+            if (length == 0) {
+                return;
+            }
+            if (length >= minRun) {
+                runs.add(new Run(start, length, value));
+            } else {
+                byte[] fill = new byte[BLOCK_SIZE];
+                Arrays.fill(fill, value);
+                for (long written = 0; written < length; written += BLOCK_SIZE) {
+                    out.write(fill, 0, (int) Math.min(BLOCK_SIZE, length - written));
+                }
+            }
+            length = 0;
+        }
+    }
+
+    /**
+     * Decompresses a sparse container into a file. Zero runs are left as holes, so on
+     * filesystems that support sparse files they take no space and no write bandwidth.
+     */
+    public static void decompress(File inputFile, File outputFile) throws IOException {
+        try (FileChannel in = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            long size = readHeader(in);
+            List<Run> runs = readRuns(in);
+            long tableOffset = tableOffset(in);
+
+            try (InputStream dense = openDense(inputFile, in, tableOffset);
+                 RandomAccessFile raf = new RandomAccessFile(outputFile, "rw");
+                 BufferPool.Lease<byte[]> lease = BufferPool.shared().array(BUFFER_SIZE)) {
+                // Extending an empty file leaves the unwritten regions as holes
+                raf.setLength(0);
+                raf.setLength(size);
+                FileChannel out = raf.getChannel();
+                byte[] buffer = lease.get();
+
+                long position = 0;
+                for (Run run : runs) {
+                    copyDense(dense, out, buffer, position, run.offset - position);
+                    if (run.value != 0) {
+                        fill(out, buffer, run);
+                    }
+                    position = run.end();
+                }
+                copyDense(dense, out, buffer, position, size - position);
+                if (dense.read() != -1) {
+                    throw new IOException("Trailing data in " + inputFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens a stream over the original content of a sparse container, for callers that
+     * consume the data instead of writing it to disk.
+     */
+    public static InputStream openDecompressing(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = readHeader(channel);
+            List<Run> runs = readRuns(channel);
+            InputStream dense = openDense(file, channel, tableOffset(channel));
+            return new RunInputStream(dense, runs, size);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static final class RunInputStream extends InputStream {
+        private final InputStream dense;
+        private final List<Run> runs;
+        private final long size;
+        private int next;
+        private long position;
+
+        RunInputStream(InputStream dense, List<Run> runs, long size) {
+            this.dense = dense;
+            this.runs = runs;
+            this.size = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == 1 ? one[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= size) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            Run run = next < runs.size() ? runs.get(next) : null;
+            if (run != null && position >= run.offset) {
+                int n = (int) Math.min(len, run.end() - position);
+                Arrays.fill(b, off, off + n, run.value);
+                position += n;
+                if (position == run.end()) {
+                    next++;
+                }
+                return n;
+            }
+            long limit = (run != null ? run.offset : size) - position;
+            int n = dense.read(b, off, (int) Math.min(len, limit));
+            if (n < 0) {
+                throw new EOFException("Sparse container is truncated");
+            }
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            dense.close();
+        }
+    }
+
+    /**
+     * Reads the tier recorded in a container's header.
+     * @return The tag, or null if the container is untiered
+     */
+    public static TieredZstd.Tag readTag(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = readHeader(channel);
+            ByteBuffer header = SeekableZstd.readFully(channel, 0, HEADER_SIZE);
+            int tier = header.get(TIER_OFFSET);
+            return tier == 0 ? null : new TieredZstd.Tag(tier - 1, header.get(TIER_OFFSET + 1), size);
+        }
+    }
+
+    /**
+     * Re-encodes the dense data of a fast-tier container at a higher level; the run table
+     * is carried over unchanged. As with {@link TieredZstd#recompact}, the file is replaced
+     * only if the result is smaller, otherwise it is retagged as compacted, and its
+     * modification time is preserved.
+     * @return The number of bytes saved, 0 if the file was kept
+     */
+    public static long recompact(File file, int level, int workers) throws IOException {
+        if (readTag(file) == null) {
+            throw new IOException("Not a tiered sparse container: " + file);
+        }
+        long oldSize = file.length();
+        long modified = file.lastModified();
+        File tmp = new File(file.getPath() + ".recompact");
+        try {
+            try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long size = readHeader(in);
+                List<Run> runs = readRuns(in);
+                long denseSize = size;
+                for (Run run : runs) {
+                    denseSize -= run.length;
+                }
+                try (InputStream dense = openDense(file, in, tableOffset(in));
+                     FileOutputStream fos = new FileOutputStream(tmp);
+                     BufferPool.Lease<byte[]> lease = BufferPool.shared().array(BUFFER_SIZE)) {
+                    writeHeader(fos, size, level, TieredZstd.TIER_COMPACTED);
+                    try (ZstdOutputStream zstdOS = openDenseOutput(fos, denseSize, level, workers)) {
+                        byte[] buffer = lease.get();
+                        int n;
+                        while ((n = dense.read(buffer)) != -1) {
+                            zstdOS.write(buffer, 0, n);
+                        }
+                    }
+                    writeTable(fos, runs);
+                }
+            }
+            long newSize = tmp.length();
+            if (newSize < oldSize) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+                file.setLastModified(modified);
+                logger.debug("Recompacted {} at level {} ({} -> {} bytes)", file.getName(), level, oldSize, newSize);
+                return oldSize - newSize;
+            }
+        } finally {
+            tmp.delete();
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) (TieredZstd.TIER_COMPACTED + 1)}), TIER_OFFSET);
+        }
+        file.setLastModified(modified);
+        logger.debug("Kept {}: level {} was not smaller than {} bytes", file.getName(), level, oldSize);
+        return 0;
+    }
+
+    private static long readHeader(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_SIZE + FOOTER_SIZE) {
+            throw new IOException("Not a sparse container");
+        }
+        ByteBuffer header = SeekableZstd.readFully(channel, 0, HEADER_SIZE);
+        if (header.getInt(0) != MAGIC || header.get(4) != VERSION || header.get(5) != BLOCK_SHIFT) {
+            throw new IOException("Unsupported sparse container");
+        }
+        return header.getLong(8);
+    }
+
+    private static long tableOffset(FileChannel channel) throws IOException {
+        return SeekableZstd.readFully(channel, channel.size() - FOOTER_SIZE, FOOTER_SIZE).getLong(0);
+    }
+
+    private static List<Run> readRuns(FileChannel channel) throws IOException {
+        ByteBuffer footer = SeekableZstd.readFully(channel, channel.size() - FOOTER_SIZE, FOOTER_SIZE);
+        long tableOffset = footer.getLong(0);
+        int count = footer.getInt(8);
+        if (footer.getInt(12) != MAGIC || count < 0
+                || tableOffset + (long) count * RUN_SIZE != channel.size() - FOOTER_SIZE) {
+            throw new IOException("Corrupt sparse container footer");
+        }
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        ByteBuffer table = SeekableZstd.readFully(channel, tableOffset, count * RUN_SIZE);
+        List<Run> runs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int base = i * RUN_SIZE;
+            runs.add(new Run(table.getLong(base), table.getLong(base + 8), table.get(base + 16)));
+        }
+        return runs;
+    }
+
+    private static InputStream openDense(File file, FileChannel channel, long tableOffset) throws IOException {
+        channel.position(HEADER_SIZE);
+        return ZstdWindow.allowWindow(new ZstdInputStream(new BufferedInputStream(
+            new BoundedInputStream(Channels.newInputStream(channel), tableOffset - HEADER_SIZE), 1024 * 1024)),
+            file, HEADER_SIZE);
+    }
+
+    private static void copyDense(InputStream dense, FileChannel out, byte[] buffer,
+                                  long position, long length) throws IOException {
+        while (length > 0) {
+            int n = dense.read(buffer, 0, (int) Math.min(BUFFER_SIZE, length));
+            if (n < 0) {
+                throw new EOFException("Sparse container is truncated");
+            }
+            writeFully(out, buffer, n, position);
+            position += n;
+            length -= n;
+        }
+    }
+
+    private static void fill(FileChannel out, byte[] buffer, Run run) throws IOException {
+        int span = (int) Math.min(BUFFER_SIZE, run.length);
+        Arrays.fill(buffer, 0, span, run.value);
+        for (long done = 0; done < run.length; done += span) {
+            int n = (int) Math.min(span, run.length - done);
+            writeFully(out, buffer, n, run.offset + done);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, byte[] buffer, int length, long position) throws IOException {
+        ByteBuffer source = ByteBuffer.wrap(buffer, 0, length);
+        while (source.hasRemaining()) {
+            channel.write(source, position + source.position());
+        }
+    }
+
+    private static boolean isConstant(ByteBuffer view, int off) {
+        long pattern = (view.get(off) & 0xFFL) * 0x0101010101010101L;
+        for (int i = off; i < off + BLOCK_SIZE; i += 8) {
+            if (view.getLong(i) != pattern) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readFully(FileChannel channel, byte[] buffer, int length, long position) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer, 0, length);
+        while (target.hasRemaining()) {
+            int n = channel.read(target, position + target.position());
+            if (n < 0) {
+                break;
+            }
+        }
+        return target.position();
+    }
+}
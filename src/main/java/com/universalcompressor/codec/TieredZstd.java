@@ -0,0 +1,182 @@
+package com.universalcompressor.codec;
+
+import com.universalcompressor.io.BufferPool;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Two-tier zstd: assets are compressed at a fast level when committed and re-encoded at
+ * a high level later by {@link Recompactor}.
+ *
+ * The tier is recorded in a skippable frame at the start of the file, so tagged outputs
+ * remain ordinary .zst files that any zstd decoder reads. Tag layout (little-endian):
+ * <pre>
+ *   u32 skippable magic (0x184D2A5B)   u32 frame size (16)
+ *   u32 tag magic "UCTR"   u8 version   u8 tier   u8 level   u8 reserved   u64 content size
+ * </pre>
+ * {@link SparseZstd} containers carry the tier in their own header; {@link #readTag} and
+ * {@link #recompact} handle both.
+ */
+public final class TieredZstd {
+    private static final Logger logger = LoggerFactory.getLogger(TieredZstd.class);
+
+    public static final int SKIPPABLE_MAGIC = 0x184D2A5B;
+    public static final int TAG_MAGIC = 0x52544355; // "UCTR" little-endian
+    public static final int TIER_FAST = 0;
+    public static final int TIER_COMPACTED = 1;
+    public static final int DEFAULT_FAST_LEVEL = 4;
+
+    private static final int VERSION = 1;
+    private static final int TAG_SIZE = 24;
+    private static final int TIER_OFFSET = 13;
+    private static final int BUFFER_SIZE = 8 * 1024 * 1024;
+
+    private TieredZstd() {
+    }
+
+    /**
+     * The tier tag of a compressed file.
+     */
+    public static final class Tag {
+        private final int tier;
+        private final int level;
+        private final long contentSize;
+
+        Tag(int tier, int level, long contentSize) {
+            this.tier = tier;
+            this.level = level;
+            this.contentSize = contentSize;
+        }
+
+        public int getTier() {
+            return tier;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public long getContentSize() {
+            return contentSize;
+        }
+    }
+
+    /**
+     * Compresses a file and tags it with its tier.
+     * @param inputFile The file to compress
+     * @param outputFile The tagged .zst output
+     * @param level Zstandard level
+     * @param tier {@link #TIER_FAST} or {@link #TIER_COMPACTED}
+     * @param workers Number of zstd worker threads (0 for single-threaded)
+     * @return The compressed size in bytes
+     */
+    public static long compress(File inputFile, File outputFile, int level, int tier, int workers) throws IOException {
+        try (InputStream in = new FileInputStream(inputFile)) {
+            return compress(in, inputFile.length(), outputFile, level, tier, workers);
+        }
+    }
+
+    private static long compress(InputStream in, long contentSize, File outputFile,
+                                 int level, int tier, int workers) throws IOException {
+        try (OutputStream fos = new BufferedOutputStream(new FileOutputStream(outputFile), 1024 * 1024);
+             BufferPool.Lease<byte[]> lease = BufferPool.shared().array(BUFFER_SIZE)) {
+            fos.write(encodeTag(tier, level, contentSize));
+            try (ZstdOutputStream zstdOS = new ZstdOutputStream(fos, level)) {
+                zstdOS.setChecksum(true);
+                ZstdWindow.configure(zstdOS, contentSize, level, workers);
+                byte[] buffer = lease.get();
+                int bytesRead;
+                while ((bytesRead = in.read(buffer)) != -1) {
+                    zstdOS.write(buffer, 0, bytesRead);
+                }
+            }
+        }
+        return outputFile.length();
+    }
+
+    private static byte[] encodeTag(int tier, int level, long contentSize) {
+        ByteBuffer tag = ByteBuffer.allocate(TAG_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        tag.putInt(SKIPPABLE_MAGIC).putInt(TAG_SIZE - 8)
+            .putInt(TAG_MAGIC).put((byte) VERSION).put((byte) tier).put((byte) level).put((byte) 0)
+            .putLong(contentSize);
+        return tag.array();
+    }
+
+    /**
+     * Reads the tier tag of a file.
+     * @return The tag, or null if the file was not written by this class
+     */
+    public static Tag readTag(File file) throws IOException {
+        if (SparseZstd.isSparse(file)) {
+            return SparseZstd.readTag(file);
+        }
+        if (file.length() < TAG_SIZE) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer tag = SeekableZstd.readFully(channel, 0, TAG_SIZE);
+            if (tag.getInt(0) != SKIPPABLE_MAGIC || tag.getInt(4) != TAG_SIZE - 8 || tag.getInt(8) != TAG_MAGIC) {
+                return null;
+            }
+            return new Tag(tag.get(TIER_OFFSET), tag.get(TIER_OFFSET + 1), tag.getLong(16));
+        }
+    }
+
+    /**
+     * Re-encodes a fast-tier file at a higher level. The file is replaced only if the new
+     * encoding is smaller; otherwise it is kept and just retagged as compacted so that it
+     * is not attempted again. The file's modification time is preserved.
+     * @param file A file written by {@link #compress}, or a tiered sparse container
+     * @param level The target Zstandard level
+     * @param workers Number of zstd worker threads (0 for single-threaded)
+     * @return The number of bytes saved, 0 if the file was kept
+     */
+    public static long recompact(File file, int level, int workers) throws IOException {
+        if (SparseZstd.isSparse(file)) {
+            return SparseZstd.recompact(file, level, workers);
+        }
+        Tag tag = readTag(file);
+        if (tag == null) {
+            throw new IOException("Not a tiered zstd file: " + file);
+        }
+        long oldSize = file.length();
+        long modified = file.lastModified();
+        File tmp = new File(file.getPath() + ".recompact");
+        try {
+            long newSize;
+            try (InputStream in = ZstdWindow.allowWindow(
+                    new ZstdInputStream(new BufferedInputStream(new FileInputStream(file), 1024 * 1024)), file, 0)) {
+                newSize = compress(in, tag.getContentSize(), tmp, level, TIER_COMPACTED, workers);
+            }
+            if (newSize < oldSize) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+                file.setLastModified(modified);
+                logger.debug("Recompacted {} at level {} ({} -> {} bytes)", file.getName(), level, oldSize, newSize);
+                return oldSize - newSize;
+            }
+        } finally {
+            tmp.delete();
+        }
+
+        // Retag in place; a single byte inside the skippable frame, invisible to decoders
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) TIER_COMPACTED}), TIER_OFFSET);
+        }
+        file.setLastModified(modified);
+        logger.debug("Kept {}: level {} was not smaller than {} bytes", file.getName(), level, oldSize);
+        return 0;
+    }
+}
@@ -0,0 +1,236 @@
+package com.universalcompressor.codec;
+
+import com.universalcompressor.util.CompressionConfig;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sizes the zstd window, worker count and job overlap to the input. Multi-GB caches
+ * repeat content far apart, so the window grows with the file (up to 2GB) and long
+ * distance matching is enabled for inputs of 16MB and more. The window is capped by
+ * zstd.max_memory_mb on the encoder side.
+ *
+ * The window size is recorded in the standard zstd frame header (Window_Descriptor), so
+ * no extra header is needed: decoders read it with {@link #readWindowLog} and raise their
+ * window limit to match, up to zstd.max_decoder_window_mb. Stock zstd tools decode these
+ * files with {@code --long=31} or {@code --memory=2048MB}.
+ */
+public final class ZstdWindow {
+    private static final Logger logger = LoggerFactory.getLogger(ZstdWindow.class);
+
+    public static final int MIN_WINDOW_LOG = 10;
+    public static final int MAX_WINDOW_LOG = 31; // 2GB, the largest window zstd supports
+    public static final int DEFAULT_WINDOW_LOG = 27; // level 22 window and default decoder limit
+
+    private static final int LDM_MIN_WINDOW_LOG = 24; // below 16MB the regular match finder covers the window
+    private static final int FRAME_MAGIC = 0xFD2FB528;
+    private static final long MIN_JOB_SIZE = 32L * 1024 * 1024;
+    private static final long MAX_JOB_SIZE = 1024L * 1024 * 1024; // zstd's limit on 64-bit
+    private static final int MAX_SKIPPABLE_FRAMES = 16;
+
+    private ZstdWindow() {
+    }
+
+    /**
+     * Returns the smallest window log that covers the whole input, limited by the memory
+     * budget and by zstd's maximum.
+     * @param inputSize Size of the input in bytes
+     * @param maxMemoryBytes Encoder memory budget; the window takes at most half of it
+     */
+    public static int windowLogFor(long inputSize, long maxMemoryBytes) {
+        int log = MIN_WINDOW_LOG;
+        while (log < MAX_WINDOW_LOG && (1L << log) < inputSize) {
+            log++;
+        }
+        while (log > MIN_WINDOW_LOG && (1L << log) > maxMemoryBytes / 2) {
+            log--;
+        }
+        return log;
+    }
+
+    /**
+     * Window, workers and job layout for one input.
+     */
+    private static final class Plan {
+        int windowLog;
+        int workers;
+        long jobSize;
+        int overlapLog;
+
+        boolean useLong() {
+            return windowLog >= LDM_MIN_WINDOW_LOG;
+        }
+    }
+
+    private static Plan plan(long inputSize, int level, int maxWorkers) {
+        long maxMemory = CompressionConfig.get().getLong("zstd.max_memory_mb", 4096) * 1024 * 1024;
+        Plan plan = new Plan();
+        plan.windowLog = windowLogFor(inputSize, maxMemory);
+
+        // Jobs of at least MIN_JOB_SIZE; extra workers on small inputs only add overhead.
+        // Each worker holds its job and the overlap, which also counts against the budget.
+        long window = 1L << plan.windowLog;
+        int workers = (int) Math.min(maxWorkers, (inputSize + MIN_JOB_SIZE - 1) / MIN_JOB_SIZE);
+        long jobSize = 0;
+        if (workers > 1) {
+            jobSize = Math.min(MAX_JOB_SIZE, Math.max(MIN_JOB_SIZE, (inputSize + workers - 1) / workers));
+            workers = (int) Math.max(1, Math.min(workers, (maxMemory - window) / (2 * jobSize)));
+        }
+        if (workers > 1) {
+            plan.workers = workers;
+            plan.jobSize = jobSize;
+            // Overlap of about one job; long distance matches are found across job boundaries
+            // anyway, so re-reading the whole window for every job would only cost time
+            int overlapLog = 9;
+            while (overlapLog > 6 && (window >> (9 - overlapLog)) > jobSize) {
+                overlapLog--;
+            }
+            plan.overlapLog = overlapLog;
+        }
+        logger.debug("zstd level {}: window 2^{}, {} workers, job size {}", level, plan.windowLog,
+            Math.max(plan.workers, 1), plan.jobSize);
+        return plan;
+    }
+
+    /**
+     * Configures an encoder for an input of the given size.
+     * @param out The encoder, before anything is written
+     * @param inputSize Size of the input in bytes
+     * @param level Zstandard level
+     * @param maxWorkers Upper bound on worker threads (0 for single-threaded)
+     * @return The window log in use
+     */
+    public static int configure(ZstdOutputStream out, long inputSize, int level, int maxWorkers) throws IOException {
+        Plan plan = plan(inputSize, level, maxWorkers);
+        out.setLevel(level);
+        if (plan.useLong()) {
+            // zstd-jni's setLong turns long distance matching off above a 2^27 window, so
+            // enable it at 27 and set the real window separately
+            out.setLong(Math.min(plan.windowLog, DEFAULT_WINDOW_LOG));
+        }
+        out.setWindowLog(plan.windowLog);
+        if (plan.workers > 1) {
+            out.setWorkers(plan.workers);
+            out.setJobSize((int) plan.jobSize);
+            out.setOverlapLog(plan.overlapLog);
+        }
+        return plan.windowLog;
+    }
+
+    /**
+     * Configures a compression context the same way, for callers that feed it direct
+     * buffers instead of going through a stream.
+     * @param ctx The context, before anything is compressed
+     * @param inputSize Size of the input in bytes
+     * @param level Zstandard level
+     * @param maxWorkers Upper bound on worker threads (0 for single-threaded)
+     * @return The window log in use
+     */
+    public static int configure(ZstdCompressCtx ctx, long inputSize, int level, int maxWorkers) {
+        Plan plan = plan(inputSize, level, maxWorkers);
+        ctx.setLevel(level);
+        if (plan.useLong()) {
+            ctx.setLong(Math.min(plan.windowLog, DEFAULT_WINDOW_LOG));
+        }
+        ctx.setWindowLog(plan.windowLog);
+        if (plan.workers > 1) {
+            ctx.setWorkers(plan.workers);
+            ctx.setJobSize((int) plan.jobSize);
+            ctx.setOverlapLog(plan.overlapLog);
+        }
+        return plan.windowLog;
+    }
+
+    /**
+     * Reads the window size from the header of the first zstd frame, skipping any
+     * skippable frames before it.
+     * @param file The compressed file
+     * @param offset Where the zstd data starts in the file
+     * @return The window log the decoder needs, or -1 if there is no frame header
+     */
+    public static int readWindowLog(File file, long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long position = offset;
+            for (int i = 0; i < MAX_SKIPPABLE_FRAMES && position + 8 <= channel.size(); i++) {
+                ByteBuffer start = SeekableZstd.readFully(channel, position, 8);
+                int magic = start.getInt(0);
+                if ((magic & 0xFFFFFFF0) == 0x184D2A50) {
+                    position += 8 + (start.getInt(4) & 0xFFFFFFFFL);
+                    continue;
+                }
+                if (magic != FRAME_MAGIC) {
+                    return -1;
+                }
+                // Frame header: descriptor, window descriptor, dictionary ID and content size, at most 14 bytes
+                int headerSize = (int) Math.min(14, channel.size() - position - 4);
+                return windowLogOf(SeekableZstd.readFully(channel, position + 4, headerSize));
+            }
+            return -1;
+        }
+    }
+
+    private static int windowLogOf(ByteBuffer header) {
+        int descriptor = header.get(0) & 0xFF;
+        boolean singleSegment = (descriptor & 0x20) != 0;
+        long windowSize;
+        if (!singleSegment) {
+            int windowDescriptor = header.get(1) & 0xFF;
+            long base = 1L << (10 + (windowDescriptor >>> 3));
+            windowSize = base + (base / 8) * (windowDescriptor & 7);
+        } else {
+            // The window is the content size, which follows the dictionary ID
+            int dictIdSize = new int[] {0, 1, 2, 4}[descriptor & 3];
+            int position = 1 + dictIdSize;
+            switch (descriptor >>> 6) {
+                case 0:
+                    windowSize = header.get(position) & 0xFF;
+                    break;
+                case 1:
+                    windowSize = (header.getShort(position) & 0xFFFF) + 256;
+                    break;
+                case 2:
+                    windowSize = header.getInt(position) & 0xFFFFFFFFL;
+                    break;
+                default:
+                    windowSize = header.getLong(position);
+            }
+        }
+        int log = MIN_WINDOW_LOG;
+        while (log < 63 && (1L << log) < windowSize) {
+            log++;
+        }
+        return log;
+    }
+
+    /**
+     * Raises a decoder's window limit to what the file needs. Fails up front, rather than
+     * part way through, if that exceeds zstd.max_decoder_window_mb.
+     * @param in The decoder, before anything is read
+     * @param file The compressed file
+     * @param offset Where the zstd data starts in the file
+     * @return The decoder
+     */
+    public static ZstdInputStream allowWindow(ZstdInputStream in, File file, long offset) throws IOException {
+        int windowLog = readWindowLog(file, offset);
+        if (windowLog <= DEFAULT_WINDOW_LOG) {
+            return in;
+        }
+        long limit = CompressionConfig.get().getLong("zstd.max_decoder_window_mb", 2048) * 1024 * 1024;
+        if (windowLog > MAX_WINDOW_LOG || (1L << windowLog) > limit) {
+            throw new IOException(file.getName() + " needs a " + ((1L << windowLog) >> 20)
+                + "MB zstd window, above the decoder limit of " + (limit >> 20) + "MB (zstd.max_decoder_window_mb)");
+        }
+        in.setLongMax(windowLog);
+        return in;
+    }
+}
@@ -0,0 +1,61 @@
+package com.universalcompressor.io;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Releases the native memory behind direct and mapped buffers immediately instead of
+ * waiting for the garbage collector. Uses {@code sun.misc.Unsafe.invokeCleaner} from the
+ * jdk.unsupported module; when that is unavailable the buffer is left to the GC.
+ *
+ * The buffer must not be accessed after it has been cleaned.
+ */
+public final class BufferCleaner {
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Fall back to GC-driven release
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private BufferCleaner() {
+    }
+
+    /**
+     * @return true if buffers can be released deterministically on this JVM
+     */
+    public static boolean isSupported() {
+        return INVOKE_CLEANER != null;
+    }
+
+    /**
+     * Frees a direct or mapped buffer. Heap buffers and slices are ignored.
+     * @return true if the memory was released immediately
+     */
+    public static boolean clean(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || INVOKE_CLEANER == null) {
+            return false;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Slices and duplicates have no cleaner of their own
+            return false;
+        }
+    }
+}
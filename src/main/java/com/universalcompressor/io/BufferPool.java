@@ -0,0 +1,373 @@
+package com.universalcompressor.io;
+
+import com.universalcompressor.util.CompressionConfig;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared pool of direct buffers and byte arrays used by all codec paths.
+ *
+ * Buffers are grouped into power-of-two size classes from 64KB to 64MB and recycled on
+ * release, so a batch run reuses the same few buffers instead of allocating new 8MB
+ * blocks per file. The total memory owned by the pool (idle plus leased) is capped at
+ * {@code performance.max_memory_usage_mb}; an acquire that would exceed the cap first
+ * frees idle buffers and then waits for another thread to release one. Direct buffers
+ * dropped from the pool are freed immediately through {@link BufferCleaner} rather than
+ * left for the garbage collector.
+ *
+ * Typical use:
+ * <pre>
+ *   try (BufferPool.Lease&lt;byte[]&gt; lease = BufferPool.shared().array(BUFFER_SIZE)) {
+ *       byte[] buffer = lease.get();
+ *       ...
+ *   }
+ * </pre>
+ */
+public final class BufferPool {
+    private static final Logger logger = LoggerFactory.getLogger(BufferPool.class);
+
+    private static final int MIN_CLASS_SHIFT = 16; // 64KB
+    private static final int MAX_CLASS_SHIFT = 26; // 64MB
+    private static final int CLASS_COUNT = MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1;
+    private static final long DEFAULT_MAX_MEMORY_MB = 8192;
+
+    private static volatile BufferPool shared;
+
+    private final long capBytes;
+    private final List<ArrayDeque<ByteBuffer>> idleDirect = new ArrayList<>(CLASS_COUNT);
+    private final List<ArrayDeque<byte[]>> idleArrays = new ArrayList<>(CLASS_COUNT);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    // Guarded by lock
+    private long allocatedBytes;   // idle + leased
+    private long leasedBytes;
+    private long peakLeasedBytes;
+    private long peakAllocatedBytes;
+    private long hits;
+    private long misses;
+    private long waits;
+    private long evictions;
+
+    public BufferPool(long capBytes) {
+        if (capBytes <= 0) {
+            throw new IllegalArgumentException("Buffer pool cap must be positive: " + capBytes);
+        }
+        this.capBytes = capBytes;
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            idleDirect.add(new ArrayDeque<>());
+            idleArrays.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Returns the process-wide pool, capped by {@code performance.max_memory_usage_mb}.
+     */
+    public static BufferPool shared() {
+        BufferPool pool = shared;
+        if (pool == null) {
+            synchronized (BufferPool.class) {
+                pool = shared;
+                if (pool == null) {
+                    long capMb = CompressionConfig.get().getLong("performance.max_memory_usage_mb", DEFAULT_MAX_MEMORY_MB);
+                    pool = new BufferPool(Math.max(1, capMb) * 1024 * 1024);
+                    shared = pool;
+                    logger.debug("Buffer pool initialised with a {} MB cap", capMb);
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * A leased buffer. Closing the lease returns the buffer to the pool; the buffer must
+     * not be used afterwards.
+     */
+    public static final class Lease<T> implements AutoCloseable {
+        private final BufferPool pool;
+        private final int classIndex;
+        private final long bytes;
+        private T value;
+
+        private Lease(BufferPool pool, int classIndex, long bytes, T value) {
+            this.pool = pool;
+            this.classIndex = classIndex;
+            this.bytes = bytes;
+            this.value = value;
+        }
+
+        public T get() {
+            if (value == null) {
+                throw new IllegalStateException("Buffer lease already released");
+            }
+            return value;
+        }
+
+        @Override
+        public void close() {
+            if (value != null) {
+                T v = value;
+                value = null;
+                pool.release(classIndex, bytes, v);
+            }
+        }
+    }
+
+    /**
+     * Leases a direct buffer with a capacity of at least {@code size} bytes. The buffer
+     * is cleared, with its limit set to {@code size}.
+     */
+    public Lease<ByteBuffer> direct(int size) {
+        int idx = classIndex(size);
+        long bytes = idx >= 0 ? classSize(idx) : size;
+        ByteBuffer buffer = reserve(idx, bytes, true);
+        if (buffer == null) {
+            try {
+                buffer = ByteBuffer.allocateDirect((int) bytes);
+            } catch (OutOfMemoryError e) {
+                unreserve(bytes);
+                throw e;
+            }
+        }
+        buffer.clear().limit(size);
+        return new Lease<>(this, idx, bytes, buffer);
+    }
+
+    /**
+     * Leases a heap array of at least {@code size} bytes. Contents are not zeroed.
+     */
+    public Lease<byte[]> array(int size) {
+        int idx = classIndex(size);
+        long bytes = idx >= 0 ? classSize(idx) : size;
+        byte[] array = reserve(idx, bytes, false);
+        if (array == null) {
+            try {
+                array = new byte[(int) bytes];
+            } catch (OutOfMemoryError e) {
+                unreserve(bytes);
+                throw e;
+            }
+        }
+        return new Lease<>(this, idx, bytes, array);
+    }
+
+    /**
+     * Takes an idle buffer of the class, or reserves room for a new one and returns null.
+     * Blocks while the pool is at its cap.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T reserve(int idx, long bytes, boolean direct) {
+        if (bytes > capBytes) {
+            throw new IllegalArgumentException("Requested buffer of " + bytes
+                + " bytes exceeds the pool cap of " + capBytes + " bytes");
+        }
+        lock.lock();
+        try {
+            while (true) {
+                if (idx >= 0) {
+                    Object idle = direct ? idleDirect.get(idx).pollFirst() : idleArrays.get(idx).pollFirst();
+                    if (idle != null) {
+                        hits++;
+                        lease(bytes);
+                        return (T) idle;
+                    }
+                }
+                if (allocatedBytes + bytes > capBytes) {
+                    evictIdle(allocatedBytes + bytes - capBytes);
+                }
+                if (allocatedBytes + bytes <= capBytes) {
+                    misses++;
+                    allocatedBytes += bytes;
+                    peakAllocatedBytes = Math.max(peakAllocatedBytes, allocatedBytes);
+                    lease(bytes);
+                    return null;
+                }
+                waits++;
+                released.await(1, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for buffer memory", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void lease(long bytes) {
+        leasedBytes += bytes;
+        peakLeasedBytes = Math.max(peakLeasedBytes, leasedBytes);
+    }
+
+    private void unreserve(long bytes) {
+        lock.lock();
+        try {
+            allocatedBytes -= bytes;
+            leasedBytes -= bytes;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(int idx, long bytes, Object buffer) {
+        lock.lock();
+        try {
+            leasedBytes -= bytes;
+            if (idx >= 0) {
+                if (buffer instanceof ByteBuffer) {
+                    idleDirect.get(idx).addFirst((ByteBuffer) buffer);
+                } else {
+                    idleArrays.get(idx).addFirst((byte[]) buffer);
+                }
+            } else {
+                // Oversized buffers are not pooled
+                allocatedBytes -= bytes;
+                if (buffer instanceof ByteBuffer) {
+                    BufferCleaner.clean((ByteBuffer) buffer);
+                }
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops idle buffers, largest classes first, until at least {@code needed} bytes are freed.
+     */
+    private void evictIdle(long needed) {
+        long freed = 0;
+        for (int i = CLASS_COUNT - 1; i >= 0 && freed < needed; i--) {
+            while (freed < needed && !idleDirect.get(i).isEmpty()) {
+                BufferCleaner.clean(idleDirect.get(i).pollFirst());
+                freed += classSize(i);
+                evictions++;
+            }
+            while (freed < needed && !idleArrays.get(i).isEmpty()) {
+                idleArrays.get(i).pollFirst();
+                freed += classSize(i);
+                evictions++;
+            }
+        }
+        allocatedBytes -= freed;
+    }
+
+    /**
+     * Frees every idle buffer. Leased buffers are unaffected.
+     */
+    public void trim() {
+        lock.lock();
+        try {
+            evictIdle(Long.MAX_VALUE);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static int classIndex(int size) {
+        int shift = Math.max(MIN_CLASS_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(1, size) - 1));
+        return shift <= MAX_CLASS_SHIFT ? shift - MIN_CLASS_SHIFT : -1;
+    }
+
+    private static long classSize(int idx) {
+        return 1L << (idx + MIN_CLASS_SHIFT);
+    }
+
+    public long getCapBytes() {
+        return capBytes;
+    }
+
+    /**
+     * Returns a snapshot of the pool counters.
+     */
+    public Stats getStats() {
+        lock.lock();
+        try {
+            return new Stats(hits, misses, waits, evictions, leasedBytes, allocatedBytes,
+                peakLeasedBytes, peakAllocatedBytes, capBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Point-in-time pool statistics.
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long waits;
+        private final long evictions;
+        private final long leasedBytes;
+        private final long allocatedBytes;
+        private final long peakLeasedBytes;
+        private final long peakAllocatedBytes;
+        private final long capBytes;
+
+        Stats(long hits, long misses, long waits, long evictions, long leasedBytes, long allocatedBytes,
+              long peakLeasedBytes, long peakAllocatedBytes, long capBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.waits = waits;
+            this.evictions = evictions;
+            this.leasedBytes = leasedBytes;
+            this.allocatedBytes = allocatedBytes;
+            this.peakLeasedBytes = peakLeasedBytes;
+            this.peakAllocatedBytes = peakAllocatedBytes;
+            this.capBytes = capBytes;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getWaits() {
+            return waits;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getLeasedBytes() {
+            return leasedBytes;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public long getPeakLeasedBytes() {
+            return peakLeasedBytes;
+        }
+
+        public long getPeakAllocatedBytes() {
+            return peakAllocatedBytes;
+        }
+
+        public long getCapBytes() {
+            return capBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d misses=%d waits=%d evictions=%d leased=%d allocated=%d "
+                    + "peakLeased=%d peakAllocated=%d cap=%d",
+                hits, misses, waits, evictions, leasedBytes, allocatedBytes,
+                peakLeasedBytes, peakAllocatedBytes, capBytes);
+        }
+    }
+}
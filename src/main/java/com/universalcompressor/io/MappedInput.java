@@ -0,0 +1,212 @@
+package com.universalcompressor.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sequential read access to a large file through a few large memory mappings. Each segment
+ * (1GB by default) is mapped once and handed out as slices, so encoders that accept
+ * direct buffers read straight from the page cache without an intermediate copy. A
+ * segment is unmapped through {@link BufferCleaner} as soon as the reader moves past it,
+ * instead of whenever the GC gets to it.
+ *
+ * Java 11 has no madvise, so sequential/willneed hints are approximated: a background
+ * thread touches the pages up to {@code readAhead} bytes ahead of the reader, which
+ * starts the disk reads before the encoder faults on them.
+ *
+ * Not thread-safe; a slice is only valid until the next call to {@link #next} or
+ * {@link #close}.
+ */
+public final class MappedInput implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(MappedInput.class);
+
+    public static final long DEFAULT_SEGMENT_SIZE = 1L << 30;
+
+    private static final int PAGE_SIZE = 4096;
+    private static final int PREFETCH_STEP = 1024 * 1024; // bytes touched per segment snapshot
+
+    private final FileChannel channel;
+    private final long size;
+    private final long segmentSize;
+    private final long readAhead;
+    private final Object lock = new Object();
+    private final Thread prefetcher;
+
+    // Written by the reader under lock; the prefetcher snapshots them under lock and then
+    // touches pages without it. A segment is unmapped only once the prefetcher has
+    // stopped touching it, which the generation tells it to do early.
+    private MappedByteBuffer segment;
+    private long segmentStart;
+    private boolean touching;
+    private volatile int generation;
+    private volatile boolean closed;
+
+    private volatile long position;
+    private volatile int prefetchSink;
+
+    /**
+     * @param channel The input, open for reading; not closed by this class
+     * @param segmentSize Bytes per mapping, at most 2GB
+     * @param readAhead How far ahead of the reader pages are touched, 0 to disable
+     */
+    public MappedInput(FileChannel channel, long segmentSize, long readAhead) throws IOException {
+        if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size out of range: " + segmentSize);
+        }
+        this.channel = channel;
+        this.size = channel.size();
+        this.segmentSize = segmentSize - segmentSize % PAGE_SIZE;
+        this.readAhead = readAhead;
+        if (readAhead > 0) {
+            prefetcher = new Thread(this::prefetch, "mmap-prefetch");
+            prefetcher.setDaemon(true);
+            prefetcher.start();
+        } else {
+            prefetcher = null;
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Returns the next part of the input as a slice of the mapping.
+     * @param maxBytes Upper bound on the slice length
+     * @return The slice, or null at the end of the input
+     */
+    public ByteBuffer next(int maxBytes) throws IOException {
+        long start = position;
+        if (start >= size) {
+            return null;
+        }
+        if (closed) {
+            throw new IOException("Mapped input is closed");
+        }
+        if (segment == null || start >= segmentStart + segment.capacity()) {
+            synchronized (lock) {
+                release();
+                remap(start);
+            }
+        }
+        int offset = (int) (start - segmentStart);
+        int length = Math.min(maxBytes, segment.capacity() - offset);
+        ByteBuffer slice = segment.duplicate();
+        slice.position(offset).limit(offset + length);
+        position = start + length;
+        if (prefetcher != null) {
+            LockSupport.unpark(prefetcher);
+        }
+        return slice.slice();
+    }
+
+    private void remap(long start) throws IOException {
+        long length = Math.min(segmentSize, size - start);
+        segment = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        segmentStart = start;
+        logger.debug("Mapped {} MB at offset {}", length >> 20, start);
+    }
+
+    /**
+     * Unmaps the current segment once the prefetcher has let go of it. Called with lock held.
+     */
+    private void release() {
+        MappedByteBuffer old = segment;
+        if (old == null) {
+            return;
+        }
+        segment = null;
+        generation++;
+        boolean interrupted = false;
+        while (touching) {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        BufferCleaner.clean(old);
+    }
+
+    /**
+     * Touches one byte per page ahead of the reader, within the current segment, and
+     * sleeps once it has caught up with the read-ahead target. The lock is held only to
+     * take a snapshot of the segment; the pages are touched outside it, stopping as soon
+     * as the reader moves to a new generation.
+     */
+    private void prefetch() {
+        long touched = 0;
+        int sink = 0;
+        while (true) {
+            MappedByteBuffer current;
+            long start;
+            long target = 0;
+            long stop = 0;
+            int snapshot;
+            synchronized (lock) {
+                if (closed) {
+                    break;
+                }
+                current = segment;
+                start = segmentStart;
+                snapshot = generation;
+                if (current != null) {
+                    target = Math.min(start + current.capacity(), position + readAhead);
+                    touched = Math.max(touched, start);
+                    stop = Math.min(target, touched + PREFETCH_STEP);
+                    touching = touched < stop;
+                }
+            }
+            if (current != null && touched < stop) {
+                try {
+                    for (; touched < stop && generation == snapshot; touched += PAGE_SIZE) {
+                        sink += current.get((int) (touched - start));
+                    }
+                } finally {
+                    synchronized (lock) {
+                        touching = false;
+                        lock.notifyAll();
+                    }
+                }
+                if (touched < target && generation == snapshot) {
+                    continue;
+                }
+            }
+            // Caught up; next() and close() unpark us. A permit left by an unpark that
+            // raced with the check above makes this return immediately.
+            LockSupport.park(this);
+        }
+        prefetchSink = sink;
+    }
+
+    /**
+     * Unmaps the current segment. The channel stays open.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            release();
+        }
+        if (prefetcher != null) {
+            LockSupport.unpark(prefetcher);
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package com.universalcompressor.manifest;
+
+import com.universalcompressor.io.BufferCleaner;
+import com.universalcompressor.model.ManifestEntry;
+import com.universalcompressor.util.FileUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binary manifest of compressed assets, replacing the pipe-delimited .compressed_files list.
+ *
+ * The file is memory-mapped and records are sorted by a 64-bit hash of the path, so a
+ * lookup is a binary search that touches only a few pages. Layout:
+ * <pre>
+ *   header:  u32 magic "UCMF"  u16 version  u16 record size  u32 count  u32 crc32 of the rest
+ *            u64 string table offset  u64 reserved
+ *   records: { u64 path hash   u32 string offset   u16 path length   u16 compressed path length
+ *              u64 original size   u64 compressed size   u64 mtime (ms)   32-byte SHA-256
+ *              u8 codec   u8 flags   6 bytes reserved } * count
+ *   strings: UTF-8 path followed by UTF-8 compressed path, per record
+ * </pre>
+ * All integers are little-endian. Flag bit 0 marks a recorded hash; bit 1 marks an unknown
+ * original size (stored as 0), for entries migrated without their original. Updates rewrite the file to a temporary name and
+ * rename it over the old one, so readers never see a partial manifest.
+ */
+public class AssetManifest implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(AssetManifest.class);
+
+    public static final String DEFAULT_FILE = ".compressed_manifest";
+
+    private static final int MAGIC = 0x464D4355; // "UCMF" little-endian
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 80;
+    private static final int FLAG_HASH_KNOWN = 1;
+    private static final int FLAG_SIZE_UNKNOWN = 2;
+
+    // Codec ids stored in the record; 0 means "detect from the compressed file"
+    private static final String[] CODECS = {"", "zstd", "zstd-seekable", "brotli", "xz", "bzip2", "gzip", "7z", "zstd-sparse", "chunked"};
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int stringsOffset;
+    private boolean closed;
+
+    private AssetManifest(File file, ByteBuffer buffer, int count, int stringsOffset) {
+        this.file = file;
+        this.buffer = buffer;
+        this.count = count;
+        this.stringsOffset = stringsOffset;
+    }
+
+    /**
+     * Maps a manifest file. A missing file is treated as an empty manifest.
+     * @throws IOException if the file exists but is not a valid manifest
+     */
+    public static AssetManifest open(File file) throws IOException {
+        if (!file.isFile() || file.length() == 0) {
+            return new AssetManifest(file, ByteBuffer.allocate(0), 0, HEADER_SIZE);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid manifest size: " + size);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            try {
+                if (mapped.getInt(0) != MAGIC) {
+                    throw new IOException("Not an asset manifest: " + file);
+                }
+                if (mapped.getShort(4) != VERSION || mapped.getShort(6) != RECORD_SIZE) {
+                    throw new IOException("Unsupported manifest version " + mapped.getShort(4) + ": " + file);
+                }
+                int count = mapped.getInt(8);
+                long stringsOffset = mapped.getLong(16);
+                if (count < 0 || stringsOffset != HEADER_SIZE + (long) count * RECORD_SIZE || stringsOffset > size) {
+                    throw new IOException("Corrupt manifest header: " + file);
+                }
+                CRC32 crc = new CRC32();
+                ByteBuffer body = mapped.duplicate();
+                body.position(HEADER_SIZE);
+                crc.update(body);
+                if ((int) crc.getValue() != mapped.getInt(12)) {
+                    throw new IOException("Manifest checksum mismatch: " + file);
+                }
+                return new AssetManifest(file, mapped, count, (int) stringsOffset);
+            } catch (IOException e) {
+                BufferCleaner.clean(mapped);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Number of entries in the manifest.
+     */
+    public int size() {
+        ensureOpen();
+        return count;
+    }
+
+    /**
+     * Finds the entry for a path in O(log n).
+     * @param path Path of the original file, relative to the repository root
+     * @return The entry, or null if the path is not in the manifest
+     */
+    public ManifestEntry lookup(String path) {
+        ensureOpen();
+        String normalized = normalize(path);
+        long hash = pathHash(normalized);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Long.compareUnsigned(buffer.getLong(recordOffset(mid)), hash);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        // low is the first record with this hash; colliding paths sit next to each other
+        for (int i = low; i < count && buffer.getLong(recordOffset(i)) == hash; i++) {
+            if (readPath(i).equals(normalized)) {
+                return read(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all entries in manifest order.
+     */
+    public List<ManifestEntry> entries() {
+        ensureOpen();
+        List<ManifestEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(read(i));
+        }
+        return entries;
+    }
+
+    /**
+     * Applies a set of changes and rewrites the manifest. This instance is closed and the
+     * updated manifest is returned.
+     * @param upserts Entries to add or replace, matched by path
+     * @param removals Paths to remove
+     */
+    public AssetManifest update(Collection<ManifestEntry> upserts, Collection<String> removals) throws IOException {
+        ensureOpen();
+        Map<String, ManifestEntry> merged = new HashMap<>(count + upserts.size());
+        for (int i = 0; i < count; i++) {
+            ManifestEntry entry = read(i);
+            merged.put(entry.getPath(), entry);
+        }
+        for (String path : removals) {
+            merged.remove(normalize(path));
+        }
+        for (ManifestEntry entry : upserts) {
+            merged.put(normalize(entry.getPath()), entry);
+        }
+        close();
+        write(file, merged.values());
+        return open(file);
+    }
+
+    /**
+     * Writes a complete manifest, replacing the file atomically.
+     */
+    public static void write(File file, Collection<ManifestEntry> entries) throws IOException {
+        List<ManifestEntry> sorted = new ArrayList<>(entries);
+        Map<ManifestEntry, Long> hashOf = new IdentityHashMap<>();
+        for (ManifestEntry entry : sorted) {
+            hashOf.put(entry, pathHash(normalize(entry.getPath())));
+        }
+        sorted.sort((a, b) -> {
+            int cmp = Long.compareUnsigned(hashOf.get(a), hashOf.get(b));
+            return cmp != 0 ? cmp : normalize(a.getPath()).compareTo(normalize(b.getPath()));
+        });
+
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        ByteBuffer records = ByteBuffer.allocate(sorted.size() * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < sorted.size(); i++) {
+            ManifestEntry entry = sorted.get(i);
+            byte[] path = normalize(entry.getPath()).getBytes(StandardCharsets.UTF_8);
+            byte[] compressedPath = normalize(entry.getCompressedPath()).getBytes(StandardCharsets.UTF_8);
+            if (path.length > 0xFFFF || compressedPath.length > 0xFFFF) {
+                throw new IOException("Path too long for the manifest: " + entry.getPath());
+            }
+            records.putLong(hashOf.get(entry))
+                .putInt(strings.size())
+                .putShort((short) path.length)
+                .putShort((short) compressedPath.length)
+                .putLong(entry.isSizeKnown() ? entry.getOriginalSize() : 0)
+                .putLong(entry.getCompressedSize())
+                .putLong(entry.getModifiedTime());
+            byte[] hash = entry.getContentHash() != null ? fromHex(entry.getContentHash()) : new byte[32];
+            records.put(hash)
+                .put((byte) codecId(entry.getMethod()))
+                .put((byte) ((entry.getContentHash() != null ? FLAG_HASH_KNOWN : 0)
+                    | (entry.isSizeKnown() ? 0 : FLAG_SIZE_UNKNOWN)))
+                .put(new byte[6]);
+            strings.write(path, 0, path.length);
+            strings.write(compressedPath, 0, compressedPath.length);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(records.array());
+        crc.update(strings.toByteArray());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC)
+            .putShort((short) VERSION)
+            .putShort((short) RECORD_SIZE)
+            .putInt(sorted.size())
+            .putInt((int) crc.getValue())
+            .putLong(HEADER_SIZE + (long) sorted.size() * RECORD_SIZE)
+            .putLong(0);
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+            out.write(header.array());
+            out.write(records.array());
+            strings.writeTo(out);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.debug("Wrote manifest {} with {} entries", file.getName(), sorted.size());
+    }
+
+    /**
+     * Checks whether a working-tree file matches its manifest entry without decompressing
+     * anything. Size and mtime are compared first; if only the mtime differs the content
+     * hash decides, and a matching file gets its mtime reset so the next check is cheap.
+     * An entry with an unknown size is never up to date, so it is restored until the
+     * checkout records what it decompressed.
+     * @param workFile The original file in the working tree
+     * @param entry Its manifest entry
+     * @return true if the file is present and up to date
+     */
+    public static boolean isUpToDate(File workFile, ManifestEntry entry) throws IOException {
+        if (!entry.isSizeKnown() || !workFile.isFile() || workFile.length() != entry.getOriginalSize()) {
+            return false;
+        }
+        if (workFile.lastModified() == entry.getModifiedTime()) {
+            return true;
+        }
+        if (entry.getContentHash() == null || !entry.getContentHash().equals(FileUtils.sha256(workFile))) {
+            return false;
+        }
+        workFile.setLastModified(entry.getModifiedTime());
+        return true;
+    }
+
+    private int recordOffset(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    private String readPath(int index) {
+        int record = recordOffset(index);
+        return readString(stringsOffset + buffer.getInt(record + 8), buffer.getShort(record + 12) & 0xFFFF);
+    }
+
+    private ManifestEntry read(int index) {
+        int record = recordOffset(index);
+        int stringOffset = stringsOffset + buffer.getInt(record + 8);
+        int pathLength = buffer.getShort(record + 12) & 0xFFFF;
+        int compressedPathLength = buffer.getShort(record + 14) & 0xFFFF;
+        byte[] hash = new byte[32];
+        ByteBuffer view = buffer.duplicate();
+        view.position(record + 40);
+        view.get(hash);
+        int codec = buffer.get(record + 72) & 0xFF;
+        int flags = buffer.get(record + 73) & 0xFF;
+        boolean hashKnown = (flags & FLAG_HASH_KNOWN) != 0;
+        return new ManifestEntry(
+            readString(stringOffset, pathLength),
+            readString(stringOffset + pathLength, compressedPathLength),
+            codec < CODECS.length ? CODECS[codec] : "",
+            (flags & FLAG_SIZE_UNKNOWN) != 0 ? ManifestEntry.UNKNOWN_SIZE : buffer.getLong(record + 16),
+            buffer.getLong(record + 24),
+            hashKnown ? FileUtils.toHex(hash) : null,
+            buffer.getLong(record + 32));
+    }
+
+    private String readString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int codecId(String method) {
+        if (method == null) {
+            return 0;
+        }
+        String name = method.toLowerCase();
+        switch (name) {
+            case "seekable":
+                name = "zstd-seekable";
+                break;
+            case "br":
+                name = "brotli";
+                break;
+            case "bz2":
+                name = "bzip2";
+                break;
+            case "gz":
+                name = "gzip";
+                break;
+            case "recipe":
+                name = "chunked";
+                break;
+            default:
+                break;
+        }
+        for (int i = 1; i < CODECS.length; i++) {
+            if (CODECS[i].equals(name)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static String normalize(String path) {
+        String normalized = path.replace('\\', '/');
+        return normalized.startsWith("./") ? normalized.substring(2) : normalized;
+    }
+
+    // 64-bit FNV-1a over the UTF-8 path
+    static long pathHash(String path) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Manifest is closed: " + file);
+        }
+    }
+
+    @Override
+    public void close() {
+        // Unmap eagerly so the file can be replaced on platforms that lock mapped files
+        if (!closed) {
+            closed = true;
+            if (buffer instanceof MappedByteBuffer) {
+                BufferCleaner.clean(buffer);
+            }
+        }
+    }
+
+    // Getters
+    public File getFile() {
+        return file;
+    }
+}
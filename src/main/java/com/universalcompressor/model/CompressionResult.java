@@ -8,6 +8,7 @@ public class CompressionResult {
     private final String errorMessage;
     private final long originalSize;     // in bytes
     private final long compressedSize;    // in bytes
+    private final String method;
 
     public CompressionResult(boolean success, String errorMessage, 
                            long originalSize, long compressedSize) {
@@ -15,6 +16,19 @@ public class CompressionResult {
         this.errorMessage = errorMessage;
         this.originalSize = originalSize;
         this.compressedSize = compressedSize;
+        this.method = null;
+    }
+
+    /**
+     * Creates a successful result.
+     * @param method The codec that produced the output
+     */
+    public CompressionResult(long originalSize, long compressedSize, String method) {
+        this.success = true;
+        this.errorMessage = "";
+        this.originalSize = originalSize;
+        this.compressedSize = compressedSize;
+        this.method = method;
     }
 
     // Getters
@@ -34,6 +48,10 @@ public class CompressionResult {
         return compressedSize;
     }
 
+    public String getMethod() {
+        return method;
+    }
+
     /**
      * Calculates the compression ratio as a percentage.
      * @return The reduction percentage (0-100)
@@ -42,4 +60,11 @@ public class CompressionResult {
         if (originalSize == 0) return 0;
         return 100.0 * (originalSize - compressedSize) / originalSize;
     }
+
+    /**
+     * Same as {@link #getReductionPercentage()}.
+     */
+    public double getCompressionRatio() {
+        return getReductionPercentage();
+    }
 }
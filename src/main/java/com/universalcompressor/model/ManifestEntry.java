@@ -0,0 +1,61 @@
+package com.universalcompressor.model;
+
+/**
+ * One compressed asset recorded in the binary manifest.
+ */
+public class ManifestEntry {
+    // Original size of an entry migrated from the legacy list whose original was already gone
+    public static final long UNKNOWN_SIZE = -1;
+
+    private final String path;             // original file, relative to the repository root
+    private final String compressedPath;   // compressed file, relative to the repository root
+    private final String method;
+    private final long originalSize;       // in bytes, or UNKNOWN_SIZE
+    private final long compressedSize;     // in bytes
+    private final String contentHash;      // SHA-256 of the original, or null if unknown
+    private final long modifiedTime;       // mtime of the original when it was compressed
+
+    public ManifestEntry(String path, String compressedPath, String method, long originalSize,
+                         long compressedSize, String contentHash, long modifiedTime) {
+        this.path = path;
+        this.compressedPath = compressedPath;
+        this.method = method;
+        this.originalSize = originalSize;
+        this.compressedSize = compressedSize;
+        this.contentHash = contentHash;
+        this.modifiedTime = modifiedTime;
+    }
+
+    // Getters
+    public String getPath() {
+        return path;
+    }
+
+    public String getCompressedPath() {
+        return compressedPath;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public long getOriginalSize() {
+        return originalSize;
+    }
+
+    public boolean isSizeKnown() {
+        return originalSize != UNKNOWN_SIZE;
+    }
+
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public long getModifiedTime() {
+        return modifiedTime;
+    }
+}
@@ -0,0 +1,56 @@
+package com.universalcompressor.model;
+
+import java.io.File;
+
+/**
+ * Represents the result of verifying a single compressed archive.
+ */
+public class VerificationResult {
+    private final File file;
+    private final String method;
+    private final boolean success;
+    private final String errorMessage;
+    private final long compressedSize;   // in bytes
+    private final long decodedSize;      // in bytes
+    private final long durationMs;
+
+    public VerificationResult(File file, String method, boolean success, String errorMessage,
+                              long compressedSize, long decodedSize, long durationMs) {
+        this.file = file;
+        this.method = method;
+        this.success = success;
+        this.errorMessage = errorMessage;
+        this.compressedSize = compressedSize;
+        this.decodedSize = decodedSize;
+        this.durationMs = durationMs;
+    }
+
+    // Getters
+    public File getFile() {
+        return file;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    public long getDecodedSize() {
+        return decodedSize;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+}
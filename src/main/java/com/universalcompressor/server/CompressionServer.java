@@ -0,0 +1,553 @@
+package com.universalcompressor.server;
+
+import com.universalcompressor.UniversalCompressor;
+import com.universalcompressor.io.BufferPool;
+import com.universalcompressor.model.CompressionResult;
+import com.universalcompressor.model.VerificationResult;
+import com.universalcompressor.util.CompressionConfig;
+import com.universalcompressor.util.FileUtils;
+import com.universalcompressor.verify.ArchiveVerifier;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Machine-wide compression service on loopback HTTP, so that build tools and hooks share
+ * one JVM, one buffer pool and warm codec contexts instead of each starting their own.
+ *
+ * Endpoints (all POST except /stats):
+ * <pre>
+ *   /compress?in=&lt;path&gt;&amp;out=&lt;path&gt;&amp;method=zstd    compress by path
+ *   /compress?method=zstd&amp;level=3                     compress the request body, respond with the result
+ *   /decompress?in=&lt;path&gt;&amp;out=&lt;path&gt;                 decompress by path
+ *   /decompress                                       decompress the request body
+ *   /verify?path=&lt;path&gt;                              verify an archive, or the request body
+ *   /batch                                            one "op|in|out|method" job per body line
+ *   /stats                                            per-job latency and buffer pool statistics
+ * </pre>
+ * Path responses are JSON with the queue and run time of the job; streamed responses
+ * report them in the X-Queue-Ms and X-Run-Ms headers.
+ *
+ * Loopback is reachable by every local user, so every request must carry
+ * {@code Authorization: Bearer <token>}, where the token is read from server.token_file.
+ * The file is created with owner-only permissions on first start, and the server refuses
+ * to start if it is readable by anyone else. Paths given by clients must lie under
+ * server.root, the repository root by default.
+ */
+public class CompressionServer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(CompressionServer.class);
+
+    public static final int DEFAULT_PORT = 7878;
+
+    private static final int COPY_BUFFER_SIZE = 1024 * 1024;
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+
+    // Warm contexts, one per worker thread; they live as long as the server's workers
+    private static final ThreadLocal<ZstdCompressCtx> COMPRESSOR = ThreadLocal.withInitial(() ->
+        new ZstdCompressCtx().setChecksum(true));
+    private static final ThreadLocal<ZstdDecompressCtx> DECOMPRESSOR = ThreadLocal.withInitial(ZstdDecompressCtx::new);
+
+    private final HttpServer http;
+    private final ExecutorService handlers;
+    private final JobScheduler scheduler;
+    private final long smallJobBytes;
+    private final int streamLevel;
+    private final Map<String, LatencyStats> stats = new ConcurrentHashMap<>();
+    private final Path root;
+    private final Path tokenFile;
+    private final byte[] token;
+
+    /**
+     * Creates a server configured from the "server" section of the configuration.
+     * @param port Loopback port to listen on (0 for any free port)
+     */
+    public CompressionServer(CompressionConfig config, int port) throws IOException {
+        int maxConcurrency = (int) config.getLong("server.max_concurrency", 0);
+        if (maxConcurrency <= 0) {
+            maxConcurrency = Runtime.getRuntime().availableProcessors();
+        }
+        this.smallJobBytes = config.getLong("server.small_job_kb", 1024) * 1024;
+        this.streamLevel = (int) config.getLong("server.stream_level", 3);
+        String configuredRoot = config.getString("server.root", "");
+        this.root = (configuredRoot.isEmpty() ? FileUtils.repositoryRoot() : Paths.get(configuredRoot)).toRealPath();
+        this.tokenFile = expandHome(config.getString("server.token_file", "~/.uc-server-token"));
+        this.token = loadToken(tokenFile);
+        this.scheduler = new JobScheduler(maxConcurrency, smallJobBytes,
+            (int) config.getLong("server.max_batch", 32), config.getLong("server.batch_window_ms", 5));
+
+        // Only reachable from this machine
+        this.http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.handlers = Executors.newFixedThreadPool((int) config.getLong("server.max_connections", 64), r -> {
+            Thread t = new Thread(r, "server-http");
+            t.setDaemon(true);
+            return t;
+        });
+        http.setExecutor(handlers);
+        http.createContext("/compress", exchange -> handle(exchange, "compress", this::compress));
+        http.createContext("/decompress", exchange -> handle(exchange, "decompress", this::decompress));
+        http.createContext("/verify", exchange -> handle(exchange, "verify", this::verify));
+        http.createContext("/batch", exchange -> handle(exchange, "batch", this::batch));
+        http.createContext("/stats", exchange -> handle(exchange, "stats", this::stats));
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange, Map<String, String> params) throws Exception;
+    }
+
+    public void start() {
+        http.start();
+        logger.info("Compression server listening on http://{}:{} for paths under {}; token in {}",
+            http.getAddress().getHostString(), http.getAddress().getPort(), root, tokenFile);
+    }
+
+    public InetSocketAddress getAddress() {
+        return http.getAddress();
+    }
+
+    private void handle(HttpExchange exchange, String operation, Handler handler) throws IOException {
+        long startTime = System.nanoTime();
+        boolean success = false;
+        try {
+            if (!authorized(exchange)) {
+                sendJson(exchange, 401, "{\"ok\":false,\"error\":\"Missing or wrong token\"}");
+                return;
+            }
+            if (!"stats".equals(operation) && !"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendJson(exchange, 405, "{\"ok\":false,\"error\":\"POST required\"}");
+                return;
+            }
+            handler.handle(exchange, parseQuery(exchange.getRequestURI().getRawQuery()));
+            success = true;
+        } catch (IllegalArgumentException e) {
+            sendJson(exchange, 400, "{\"ok\":false,\"error\":" + quote(e.getMessage()) + "}");
+        } catch (SecurityException e) {
+            sendJson(exchange, 403, "{\"ok\":false,\"error\":" + quote(e.getMessage()) + "}");
+        } catch (Exception e) {
+            logger.warn("{} request failed: {}", operation, e.getMessage());
+            sendJson(exchange, 500, "{\"ok\":false,\"error\":" + quote(String.valueOf(e.getMessage())) + "}");
+        } finally {
+            exchange.close();
+            if (!"stats".equals(operation)) {
+                stats.computeIfAbsent(operation, k -> new LatencyStats())
+                    .record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), success);
+            }
+        }
+    }
+
+    private void compress(HttpExchange exchange, Map<String, String> params) throws Exception {
+        String method = params.getOrDefault("method", "zstd");
+        if (params.containsKey("in")) {
+            sendJson(exchange, 200, runPathJob("compress", required(params, "in"), required(params, "out"), method));
+            return;
+        }
+
+        long length = contentLength(exchange);
+        if ("zstd".equalsIgnoreCase(method) && length >= 0 && length <= smallJobBytes) {
+            // Small streamed zstd jobs stay in memory on a warm context
+            int level = params.containsKey("level") ? Integer.parseInt(params.get("level")) : streamLevel;
+            byte[] input = readBody(exchange, (int) length);
+            JobScheduler.Job<byte[]> job = scheduler.submit(length, () -> {
+                try (BufferPool.Lease<byte[]> dst = BufferPool.shared().array((int) Zstd.compressBound(input.length))) {
+                    ZstdCompressCtx ctx = COMPRESSOR.get();
+                    ctx.setLevel(level);
+                    int n = ctx.compressByteArray(dst.get(), 0, dst.get().length, input, 0, input.length);
+                    return Arrays.copyOf(dst.get(), n);
+                }
+            });
+            sendBytes(exchange, job, job.get());
+            return;
+        }
+        runSpooledJob(exchange, length, (in, out) -> {
+            CompressionResult result = UniversalCompressor.compressFile(in, out, method);
+            if (!result.isSuccess()) {
+                throw new IOException("Compression failed: " + result.getErrorMessage());
+            }
+        });
+    }
+
+    private void decompress(HttpExchange exchange, Map<String, String> params) throws Exception {
+        if (params.containsKey("in")) {
+            sendJson(exchange, 200, runPathJob("decompress", required(params, "in"), required(params, "out"), null));
+            return;
+        }
+
+        long length = contentLength(exchange);
+        if (length >= 0 && length <= smallJobBytes) {
+            byte[] input = readBody(exchange, (int) length);
+            // 0 when the frame does not record its size or the body is not a zstd frame
+            long decodedSize = Zstd.decompressedSize(input);
+            if (decodedSize > 0 && decodedSize <= smallJobBytes * 16) {
+                JobScheduler.Job<byte[]> job = scheduler.submit(length, () -> {
+                    byte[] output = new byte[(int) decodedSize];
+                    int n = DECOMPRESSOR.get().decompressByteArray(output, 0, output.length, input, 0, input.length);
+                    return n == output.length ? output : Arrays.copyOf(output, n);
+                });
+                try {
+                    byte[] output = job.get();
+                    sendBytes(exchange, job, output);
+                    return;
+                } catch (ZstdException e) {
+                    // Multi-frame input: only the first frame's size is known, use the file path
+                    logger.debug("In-memory decompression failed ({}), spooling", e.getMessage());
+                }
+            }
+            runSpooledJob(exchange, new ByteArrayInputStream(input), length, this::decompressFiles);
+            return;
+        }
+        runSpooledJob(exchange, length, this::decompressFiles);
+    }
+
+    private void decompressFiles(File in, File out) throws IOException {
+        if (!UniversalCompressor.decompressAutoDetect(in, out)) {
+            throw new IOException("Decompression failed");
+        }
+    }
+
+    private void verify(HttpExchange exchange, Map<String, String> params) throws Exception {
+        File archive;
+        File spooled = null;
+        if (params.containsKey("path")) {
+            archive = resolve(params.get("path"));
+        } else {
+            spooled = File.createTempFile("uc-server-", ".in");
+            try (InputStream body = exchange.getRequestBody()) {
+                Files.copy(body, spooled.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            archive = spooled;
+        }
+        try {
+            File target = archive;
+            JobScheduler.Job<VerificationResult> job = scheduler.submit(target.length(), () -> {
+                try (BufferPool.Lease<byte[]> buffer = BufferPool.shared().array(COPY_BUFFER_SIZE)) {
+                    return ArchiveVerifier.verify(target, buffer.get());
+                }
+            });
+            VerificationResult result = job.get();
+            sendJson(exchange, result.isSuccess() ? 200 : 422, "{\"ok\":" + result.isSuccess()
+                + ",\"method\":" + quote(result.getMethod())
+                + ",\"decodedSize\":" + result.getDecodedSize()
+                + (result.isSuccess() ? "" : ",\"error\":" + quote(result.getErrorMessage()))
+                + timing(job) + "}");
+        } finally {
+            if (spooled != null) {
+                spooled.delete();
+            }
+        }
+    }
+
+    private void batch(HttpExchange exchange, Map<String, String> params) throws Exception {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    lines.add(line.trim());
+                }
+            }
+        }
+
+        // Submit everything first so that the scheduler can batch the small jobs together
+        List<Callable<String>> pending = new ArrayList<>();
+        for (String line : lines) {
+            String[] fields = line.split("\\|");
+            if (fields.length < 3) {
+                throw new IllegalArgumentException("Expected op|in|out[|method]: " + line);
+            }
+            String method = fields.length >= 4 ? fields[3] : "zstd";
+            JobScheduler.Job<String> job = submitPathJob(fields[0], fields[1], fields[2], method);
+            pending.add(() -> {
+                try {
+                    return job.get() + timing(job);
+                } catch (Exception e) {
+                    return "{\"ok\":false,\"error\":" + quote(String.valueOf(e.getMessage()));
+                }
+            });
+        }
+
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < pending.size(); i++) {
+            json.append(i > 0 ? "," : "").append(pending.get(i).call()).append('}');
+        }
+        sendJson(exchange, 200, json.append(']').toString());
+    }
+
+    private void stats(HttpExchange exchange, Map<String, String> params) throws IOException {
+        StringBuilder json = new StringBuilder("{\"jobs\":{");
+        int i = 0;
+        for (Map.Entry<String, LatencyStats> entry : new TreeMap<>(stats).entrySet()) {
+            json.append(i++ > 0 ? "," : "").append(quote(entry.getKey())).append(':').append(entry.getValue().toJson());
+        }
+        json.append("},\"bufferPool\":").append(quote(BufferPool.shared().getStats().toString())).append('}');
+        sendJson(exchange, 200, json.toString());
+    }
+
+    private String runPathJob(String operation, String in, String out, String method) throws Exception {
+        JobScheduler.Job<String> job = submitPathJob(operation, in, out, method);
+        return job.get() + timing(job) + "}";
+    }
+
+    // The returned JSON object is left open so the caller can append the timing fields
+    private JobScheduler.Job<String> submitPathJob(String operation, String in, String out, String method)
+            throws IOException {
+        File inputFile = resolve(in);
+        File outputFile = resolve(out);
+        if (!inputFile.isFile()) {
+            throw new IllegalArgumentException("No such file: " + in);
+        }
+        switch (operation.toLowerCase()) {
+            case "compress":
+                return scheduler.submit(inputFile.length(), () -> {
+                    CompressionResult result = UniversalCompressor.compressFile(inputFile, outputFile, method);
+                    return "{\"ok\":" + result.isSuccess()
+                        + ",\"originalSize\":" + result.getOriginalSize()
+                        + ",\"compressedSize\":" + result.getCompressedSize();
+                });
+            case "decompress":
+                return scheduler.submit(inputFile.length(), () -> {
+                    boolean ok = UniversalCompressor.decompressAutoDetect(inputFile, outputFile);
+                    return "{\"ok\":" + ok + ",\"decompressedSize\":" + outputFile.length();
+                });
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + operation);
+        }
+    }
+
+    private interface FileJob {
+        void run(File in, File out) throws IOException;
+    }
+
+    private void runSpooledJob(HttpExchange exchange, long length, FileJob work) throws Exception {
+        try (InputStream body = exchange.getRequestBody()) {
+            runSpooledJob(exchange, body, length, work);
+        }
+    }
+
+    // Large or unsized streams go through temporary files so that every codec is available
+    private void runSpooledJob(HttpExchange exchange, InputStream body, long length, FileJob work) throws Exception {
+        File in = File.createTempFile("uc-server-", ".in");
+        File out = File.createTempFile("uc-server-", ".out");
+        try {
+            Files.copy(body, in.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            JobScheduler.Job<Void> job = scheduler.submit(in.length(), () -> {
+                work.run(in, out);
+                return null;
+            });
+            job.get();
+            exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            exchange.getResponseHeaders().set("X-Queue-Ms", String.valueOf(job.getQueueMs()));
+            exchange.getResponseHeaders().set("X-Run-Ms", String.valueOf(job.getRunMs()));
+            exchange.sendResponseHeaders(200, out.length());
+            try (OutputStream response = exchange.getResponseBody()) {
+                Files.copy(out.toPath(), response);
+            }
+        } finally {
+            in.delete();
+            out.delete();
+        }
+    }
+
+    /**
+     * Resolves a client path against the root and rejects anything outside it, including
+     * through ".." or symbolic links.
+     * @throws SecurityException if the path escapes the root
+     */
+    private File resolve(String path) throws IOException {
+        File file = root.resolve(path).toFile().getCanonicalFile();
+        if (!file.toPath().startsWith(root)) {
+            throw new SecurityException("Path outside " + root + ": " + path);
+        }
+        return file;
+    }
+
+    private boolean authorized(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) {
+            return false;
+        }
+        byte[] presented = header.substring("Bearer ".length()).trim().getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(presented, token); // constant time
+    }
+
+    /**
+     * Reads the shared token, creating the file with a random token and owner-only
+     * permissions if it does not exist yet.
+     * @throws IOException if the file is readable or writable by group or others
+     */
+    private static byte[] loadToken(Path file) throws IOException {
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        if (!Files.exists(file)) {
+            byte[] random = new byte[32];
+            new SecureRandom().nextBytes(random);
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            try {
+                if (posix) {
+                    Files.createFile(file, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+                } else {
+                    Files.createFile(file);
+                }
+                Files.write(file, FileUtils.toHex(random).getBytes(StandardCharsets.UTF_8));
+                logger.info("Created server token in {}", file);
+            } catch (FileAlreadyExistsException e) {
+                // Another server created it first
+            }
+        }
+        if (posix) {
+            Set<PosixFilePermission> extra = Files.getPosixFilePermissions(file);
+            extra.removeAll(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE));
+            if (!extra.isEmpty()) {
+                throw new IOException("Token file " + file + " must be readable only by its owner (chmod 600)");
+            }
+        }
+        String value = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+        if (value.isEmpty()) {
+            throw new IOException("Token file is empty: " + file);
+        }
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Path expandHome(String path) {
+        if (path.equals("~") || path.startsWith("~/")) {
+            return Paths.get(System.getProperty("user.home"), path.substring(1).replaceFirst("^/", ""));
+        }
+        return Paths.get(path);
+    }
+
+    private static String timing(JobScheduler.Job<?> job) {
+        return ",\"queueMs\":" + job.getQueueMs() + ",\"runMs\":" + job.getRunMs() + ",\"batch\":" + job.getBatchSize();
+    }
+
+    private static long contentLength(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Content-Length");
+        try {
+            return header != null ? Long.parseLong(header) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static byte[] readBody(HttpExchange exchange, int length) throws IOException {
+        byte[] body = new byte[length];
+        try (InputStream in = exchange.getRequestBody()) {
+            int read = 0;
+            while (read < length) {
+                int n = in.read(body, read, length - read);
+                if (n < 0) {
+                    throw new EOFException("Request body shorter than Content-Length");
+                }
+                read += n;
+            }
+        }
+        return body;
+    }
+
+    private static void sendBytes(HttpExchange exchange, JobScheduler.Job<?> job, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.getResponseHeaders().set("X-Queue-Ms", String.valueOf(job.getQueueMs()));
+        exchange.getResponseHeaders().set("X-Run-Ms", String.valueOf(job.getRunMs()));
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        try {
+            exchange.sendResponseHeaders(status, body.length);
+        } catch (IOException e) {
+            return; // headers already sent; the client sees a truncated response
+        }
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                    URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    @Override
+    public void close() {
+        http.stop(1);
+        scheduler.close();
+        handlers.shutdownNow();
+    }
+}
@@ -0,0 +1,173 @@
+package com.universalcompressor.server;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs server jobs under a global concurrency limit. Small jobs are batched: jobs that
+ * arrive within a short window are run back to back by a single worker, which keeps its
+ * codec contexts and buffers warm and avoids a scheduling round trip per job. Large jobs
+ * take a worker of their own.
+ */
+class JobScheduler implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(JobScheduler.class);
+
+    private final ExecutorService workers;
+    private final BlockingQueue<Job<?>> smallJobs = new LinkedBlockingQueue<>();
+    private final Thread dispatcher;
+    private final long smallJobBytes;
+    private final int maxBatch;
+    private final long batchWindowNanos;
+    private volatile boolean running = true;
+
+    /**
+     * A submitted job with its timing.
+     */
+    static final class Job<T> {
+        private final Callable<T> work;
+        private final long submittedNanos = System.nanoTime();
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private volatile long startedNanos;
+        private volatile long finishedNanos;
+        private volatile int batchSize = 1;
+
+        Job(Callable<T> work) {
+            this.work = work;
+        }
+
+        void run() {
+            startedNanos = System.nanoTime();
+            T value;
+            try {
+                value = work.call();
+            } catch (Throwable t) {
+                finishedNanos = System.nanoTime();
+                result.completeExceptionally(t);
+                return;
+            }
+            // Timing is set before completion so waiters always see it
+            finishedNanos = System.nanoTime();
+            result.complete(value);
+        }
+
+        /**
+         * Waits for the job and returns its result.
+         */
+        T get() throws Exception {
+            try {
+                return result.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : new ExecutionException(cause);
+            }
+        }
+
+        long getQueueMs() {
+            return TimeUnit.NANOSECONDS.toMillis(startedNanos - submittedNanos);
+        }
+
+        long getRunMs() {
+            return TimeUnit.NANOSECONDS.toMillis(finishedNanos - startedNanos);
+        }
+
+        int getBatchSize() {
+            return batchSize;
+        }
+    }
+
+    /**
+     * @param maxConcurrency Maximum number of jobs (or batches) running at once
+     * @param smallJobBytes Jobs with at most this many input bytes are batched
+     * @param maxBatch Maximum number of small jobs per batch
+     * @param batchWindowMs How long to wait for more small jobs before running a batch
+     */
+    JobScheduler(int maxConcurrency, long smallJobBytes, int maxBatch, long batchWindowMs) {
+        this.smallJobBytes = smallJobBytes;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.batchWindowNanos = TimeUnit.MILLISECONDS.toNanos(batchWindowMs);
+        this.workers = Executors.newFixedThreadPool(Math.max(1, maxConcurrency), r -> {
+            Thread t = new Thread(r, "server-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        this.dispatcher = new Thread(this::dispatchBatches, "server-batcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Queues a job.
+     * @param inputBytes Size of the job's input, used to decide whether it is batched
+     * @param work The job
+     */
+    <T> Job<T> submit(long inputBytes, Callable<T> work) {
+        Job<T> job = new Job<>(work);
+        if (inputBytes >= 0 && inputBytes <= smallJobBytes) {
+            smallJobs.add(job);
+        } else {
+            workers.execute(job::run);
+        }
+        return job;
+    }
+
+    private void dispatchBatches() {
+        while (running) {
+            try {
+                Job<?> first = smallJobs.take();
+                List<Job<?>> batch = new ArrayList<>();
+                batch.add(first);
+                long deadline = System.nanoTime() + batchWindowNanos;
+                while (batch.size() < maxBatch) {
+                    Job<?> next = smallJobs.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                for (Job<?> job : batch) {
+                    job.batchSize = batch.size();
+                }
+                try {
+                    workers.execute(() -> {
+                        for (Job<?> job : batch) {
+                            job.run();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    logger.debug("Scheduler is shutting down; failing queued jobs");
+                    smallJobs.addAll(batch);
+                    failQueued();
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void failQueued() {
+        List<Job<?>> dropped = new ArrayList<>();
+        smallJobs.drainTo(dropped);
+        for (Job<?> job : dropped) {
+            job.result.completeExceptionally(new RejectedExecutionException("Server is shutting down"));
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        dispatcher.interrupt();
+        workers.shutdown();
+        try {
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failQueued();
+    }
+}
@@ -0,0 +1,49 @@
+package com.universalcompressor.server;
+
+import java.util.Arrays;
+
+/**
+ * Latency statistics for one kind of job. Percentiles are taken over the most recent
+ * samples so that they reflect current load rather than the whole server lifetime.
+ */
+class LatencyStats {
+    private static final int WINDOW = 1024;
+
+    private final long[] recent = new long[WINDOW];
+    private long count;
+    private long failures;
+    private long totalMs;
+    private long maxMs;
+
+    synchronized void record(long latencyMs, boolean success) {
+        recent[(int) (count % WINDOW)] = latencyMs;
+        count++;
+        totalMs += latencyMs;
+        maxMs = Math.max(maxMs, latencyMs);
+        if (!success) {
+            failures++;
+        }
+    }
+
+    /**
+     * Returns the statistics as a JSON object.
+     */
+    synchronized String toJson() {
+        int n = (int) Math.min(count, WINDOW);
+        long[] sorted = Arrays.copyOf(recent, n);
+        Arrays.sort(sorted);
+        return "{\"count\":" + count
+            + ",\"failures\":" + failures
+            + ",\"meanMs\":" + (count == 0 ? 0 : totalMs / count)
+            + ",\"p50Ms\":" + percentile(sorted, 0.50)
+            + ",\"p99Ms\":" + percentile(sorted, 0.99)
+            + ",\"maxMs\":" + maxMs + "}";
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,90 @@
+package com.universalcompressor.store;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * The list of chunks an asset is made of. Recipes are small text files so they can be
+ * committed next to the assets and diff cleanly:
+ * <pre>
+ *   uc-recipe 1 &lt;size&gt; &lt;sha256 of the whole file&gt;
+ *   &lt;sha256 of chunk 0&gt;
+ *   &lt;sha256 of chunk 1&gt;
+ *   ...
+ * </pre>
+ */
+public class ChunkRecipe {
+    public static final String EXTENSION = ".recipe";
+
+    private static final String HEADER = "uc-recipe";
+    private static final int VERSION = 1;
+
+    private final long size;
+    private final String contentHash;
+    private final List<String> chunkHashes;
+
+    public ChunkRecipe(long size, String contentHash, List<String> chunkHashes) {
+        this.size = size;
+        this.contentHash = contentHash;
+        this.chunkHashes = Collections.unmodifiableList(new ArrayList<>(chunkHashes));
+    }
+
+    /**
+     * Reads a recipe file.
+     * @throws IOException if the file is not a recipe or has an unsupported version
+     */
+    public static ChunkRecipe read(File file) throws IOException {
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII);
+        if (lines.isEmpty()) {
+            throw new IOException("Empty recipe: " + file);
+        }
+        String[] header = lines.get(0).trim().split(" ");
+        if (header.length != 4 || !HEADER.equals(header[0])) {
+            throw new IOException("Not a chunk recipe: " + file);
+        }
+        if (Integer.parseInt(header[1]) != VERSION) {
+            throw new IOException("Unsupported recipe version " + header[1] + ": " + file);
+        }
+        List<String> hashes = new ArrayList<>(lines.size() - 1);
+        for (int i = 1; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (!line.isEmpty()) {
+                hashes.add(line);
+            }
+        }
+        return new ChunkRecipe(Long.parseLong(header[2]), header[3], hashes);
+    }
+
+    /**
+     * Writes the recipe, replacing the file atomically.
+     */
+    public void write(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(tmp), StandardCharsets.US_ASCII))) {
+            writer.write(HEADER + " " + VERSION + " " + size + " " + contentHash + "\n");
+            for (String hash : chunkHashes) {
+                writer.write(hash);
+                writer.write('\n');
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Getters
+    public long getSize() {
+        return size;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public List<String> getChunkHashes() {
+        return chunkHashes;
+    }
+}
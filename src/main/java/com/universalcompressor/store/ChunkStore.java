@@ -0,0 +1,525 @@
+package com.universalcompressor.store;
+
+import com.universalcompressor.io.BufferPool;
+import com.universalcompressor.util.CompressionConfig;
+import com.universalcompressor.util.FileUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDecompressCtx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deduplicating chunk store shared by all assets and all of their versions.
+ *
+ * Inputs are split with {@link FastCdcChunker} and every chunk is identified by its
+ * SHA-256. Each unique chunk is compressed once; an asset is stored as a
+ * {@link ChunkRecipe}. Storing a slightly edited asset therefore only compresses and
+ * stores the chunks that changed.
+ *
+ * The chunks new to one {@link #put(File, File)} go into a single pack file that is named
+ * by the SHA-256 of its content and never modified afterwards. The store is committed to
+ * git along with the recipes, so each commit only adds the packs it created, and two
+ * branches that add chunks produce differently named packs that merge without conflicts.
+ * The store directory holds:
+ * <pre>
+ *   &lt;sha256&gt;.pack  compressed chunks back to back, then their index and a footer
+ *   store.lock      held while the store is open, so only one process writes at a time
+ * </pre>
+ * Pack layout (little-endian):
+ * <pre>
+ *   chunks
+ *   index:   { 32-byte SHA-256, u64 offset, u32 stored size, u32 raw size } per chunk
+ *   footer:  u64 index offset   u32 chunk count   u32 magic "UCPK"
+ * </pre>
+ * A chunk whose stored size equals its raw size is stored uncompressed. A pack is written
+ * under a temporary name, made durable and only then renamed, so a crash leaves at most a
+ * temporary file, which is removed the next time the store is opened. New chunks become
+ * visible to lookups only once their pack is in place.
+ *
+ * Assets whose method is {@value #METHOD} are committed as recipes and restored on
+ * checkout with {@link #get(File, File)}, which may be called from several threads at
+ * once as long as no {@link #put(File, File)} runs at the same time.
+ */
+public class ChunkStore implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkStore.class);
+
+    public static final int DEFAULT_MIN_CHUNK_SIZE = 16 * 1024;
+    public static final int DEFAULT_AVG_CHUNK_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_CHUNK_SIZE = 256 * 1024;
+    public static final int DEFAULT_LEVEL = 19;
+    public static final String METHOD = "chunked";
+
+    public static final String PACK_EXTENSION = ".pack";
+
+    private static final String LOCK_FILE = "store.lock";
+    private static final String TEMP_EXTENSION = ".pack.tmp";
+    private static final int PACK_MAGIC = 0x4B504355; // "UCPK" little-endian
+    private static final int HASH_SIZE = 32;
+    private static final int ENTRY_SIZE = HASH_SIZE + 16;
+    private static final int FOOTER_SIZE = 16;
+
+    private final File directory;
+    private final int level;
+    private final int threads;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, FileChannel> packs = new ConcurrentHashMap<>(); // opened on first read
+    private int minChunkSize = DEFAULT_MIN_CHUNK_SIZE;
+    private int avgChunkSize = DEFAULT_AVG_CHUNK_SIZE;
+    private int maxChunkSize = DEFAULT_MAX_CHUNK_SIZE;
+
+    private static final class Entry {
+        final String pack;
+        final long offset;
+        final int storedSize;
+        final int rawSize;
+
+        Entry(String pack, long offset, int storedSize, int rawSize) {
+            this.pack = pack;
+            this.offset = offset;
+            this.storedSize = storedSize;
+            this.rawSize = rawSize;
+        }
+    }
+
+    // A chunk being compressed; appended to the pack in submission order
+    private static final class PendingChunk {
+        final String hash;
+        final byte[] digest;
+        final int rawSize;
+        final Future<byte[]> stored;
+
+        PendingChunk(String hash, byte[] digest, int rawSize, Future<byte[]> stored) {
+            this.hash = hash;
+            this.digest = digest;
+            this.rawSize = rawSize;
+            this.stored = stored;
+        }
+    }
+
+    private ChunkStore(File directory, int level, int threads) throws IOException {
+        this.directory = directory;
+        this.level = level;
+        this.threads = Math.max(1, threads);
+        this.lockChannel = FileChannel.open(new File(directory, LOCK_FILE).toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            this.lock = lockChannel.lock();
+        } catch (IOException e) {
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens (or creates) a chunk store, waiting for any other process using it to finish.
+     * @param directory The store directory
+     * @param level Zstandard level used for new chunks
+     * @param threads Number of threads compressing new chunks
+     */
+    public static ChunkStore open(File directory, int level, int threads) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create chunk store directory: " + directory);
+        }
+        ChunkStore store = new ChunkStore(directory, level, threads);
+        try {
+            store.loadIndex();
+        } catch (IOException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    /**
+     * Opens the store configured in the "dedup" section.
+     * @param root The repository root that dedup.store_dir is relative to
+     */
+    public static ChunkStore fromConfig(File root, CompressionConfig config) throws IOException {
+        int threads = (int) config.getLong("compression.thread_count", 0);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        File directory = new File(config.getString("dedup.store_dir", "CompressedAssets/.chunks"));
+        ChunkStore store = open(directory.isAbsolute() ? directory : new File(root, directory.getPath()),
+            (int) config.getLong("dedup.level", DEFAULT_LEVEL), threads);
+        return store.setChunkSizes(
+            (int) config.getLong("dedup.min_chunk_kb", DEFAULT_MIN_CHUNK_SIZE / 1024) * 1024,
+            (int) config.getLong("dedup.avg_chunk_kb", DEFAULT_AVG_CHUNK_SIZE / 1024) * 1024,
+            (int) config.getLong("dedup.max_chunk_kb", DEFAULT_MAX_CHUNK_SIZE / 1024) * 1024);
+    }
+
+    /**
+     * Sets the chunk size limits used by {@link #put(File, File)}. Changing them only
+     * affects deduplication against chunks stored with the same settings.
+     */
+    public ChunkStore setChunkSizes(int minSize, int avgSize, int maxSize) {
+        this.minChunkSize = minSize;
+        this.avgChunkSize = avgSize;
+        this.maxChunkSize = maxSize;
+        return this;
+    }
+
+    private void loadIndex() throws IOException {
+        File[] files = directory.listFiles();
+        long chunkBytes = 0;
+        for (File file : files != null ? files : new File[0]) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_EXTENSION)) {
+                // Left by an interrupted put; never referenced by a recipe
+                file.delete();
+            } else if (name.endsWith(PACK_EXTENSION)) {
+                chunkBytes += readPackIndex(file);
+            }
+        }
+        logger.debug("Opened chunk store {} with {} chunks ({} bytes)", directory, entries.size(), chunkBytes);
+    }
+
+    /**
+     * Adds the chunks of one pack to the lookup table. A damaged pack is skipped with a
+     * warning rather than repaired, since it may be tracked by git.
+     * @return The number of chunk bytes in the pack
+     */
+    private long readPackIndex(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < FOOTER_SIZE) {
+                logger.warn("Ignoring truncated chunk pack {}", file);
+                return 0;
+            }
+            ByteBuffer footer = readFully(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+            long indexOffset = footer.getLong(0);
+            int count = footer.getInt(8);
+            if (footer.getInt(12) != PACK_MAGIC || count < 0 || indexOffset < 0
+                    || indexOffset + (long) count * ENTRY_SIZE != size - FOOTER_SIZE) {
+                logger.warn("Ignoring corrupt chunk pack {}", file);
+                return 0;
+            }
+            ByteBuffer index = readFully(channel, indexOffset, count * ENTRY_SIZE);
+            byte[] digest = new byte[HASH_SIZE];
+            for (int i = 0; i < count; i++) {
+                index.get(digest);
+                long offset = index.getLong();
+                int storedSize = index.getInt();
+                int rawSize = index.getInt();
+                if (offset < 0 || storedSize < 0 || offset + storedSize > indexOffset) {
+                    logger.warn("Ignoring corrupt chunk pack {}", file);
+                    return 0;
+                }
+                entries.putIfAbsent(FileUtils.toHex(digest), new Entry(file.getName(), offset, storedSize, rawSize));
+            }
+            return indexOffset;
+        }
+    }
+
+    /**
+     * Stores a file in the chunk store and writes its recipe.
+     * @param inputFile The file to store
+     * @param recipeFile Where to write the recipe
+     * @return The recipe that was written
+     */
+    public ChunkRecipe put(File inputFile, File recipeFile) throws IOException {
+        long startTime = System.currentTimeMillis();
+        MessageDigest fileDigest = sha256();
+        MessageDigest chunkDigest = sha256();
+        List<String> hashes = new ArrayList<>();
+        Set<String> queued = new HashSet<>();
+        Deque<PendingChunk> inFlight = new ArrayDeque<>();
+        Map<String, Entry> appended = new HashMap<>();
+        long[] added = new long[3]; // chunks, raw bytes, stored bytes
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "chunk-compressor");
+            t.setDaemon(true);
+            return t;
+        });
+
+        long size = 0;
+        File tmp = new File(directory, UUID.randomUUID() + TEMP_EXTENSION);
+        byte[] packDigest = null;
+        try (InputStream in = new FileInputStream(inputFile);
+             FileChannel pack = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            PackWriter writer = new PackWriter(pack);
+            FastCdcChunker chunker = new FastCdcChunker(in, minChunkSize, avgChunkSize, maxChunkSize);
+            byte[] chunk;
+            while ((chunk = chunker.next()) != null) {
+                size += chunk.length;
+                fileDigest.update(chunk);
+                byte[] digest = chunkDigest.digest(chunk);
+                String hash = FileUtils.toHex(digest);
+                hashes.add(hash);
+                if (entries.containsKey(hash) || !queued.add(hash)) {
+                    continue;
+                }
+
+                byte[] raw = chunk;
+                inFlight.addLast(new PendingChunk(hash, digest, raw.length, executor.submit(() -> {
+                    byte[] compressed = Zstd.compress(raw, level);
+                    return compressed.length < raw.length ? compressed : raw;
+                })));
+                if (inFlight.size() >= threads * 2) {
+                    writer.append(inFlight.pollFirst(), appended, added);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                writer.append(inFlight.pollFirst(), appended, added);
+            }
+            if (added[0] > 0) {
+                writer.finish();
+                packDigest = writer.digest();
+            }
+        } catch (IOException | RuntimeException e) {
+            tmp.delete();
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // The pack must be durable under its final name before a recipe references it
+        if (packDigest != null) {
+            String packName = FileUtils.toHex(packDigest) + PACK_EXTENSION;
+            File packFile = new File(directory, packName);
+            try {
+                Files.move(tmp.toPath(), packFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                tmp.delete();
+            }
+            for (Map.Entry<String, Entry> e : appended.entrySet()) {
+                Entry entry = e.getValue();
+                entries.put(e.getKey(), new Entry(packName, entry.offset, entry.storedSize, entry.rawSize));
+            }
+        } else {
+            tmp.delete();
+        }
+
+        ChunkRecipe recipe = new ChunkRecipe(size, FileUtils.toHex(fileDigest.digest()), hashes);
+        recipe.write(recipeFile);
+
+        logger.info("Stored {} as {} chunks ({} new, {} -> {} bytes) in {} ms",
+            inputFile.getName(), hashes.size(), added[0], added[1], added[2],
+            System.currentTimeMillis() - startTime);
+        return recipe;
+    }
+
+    /**
+     * Writes the new chunks of one put into a temporary pack, followed by its index.
+     */
+    private static final class PackWriter {
+        private final FileChannel pack;
+        private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        private final MessageDigest digest = sha256(); // names the pack
+        private long position;
+        private int count;
+
+        PackWriter(FileChannel pack) {
+            this.pack = pack;
+        }
+
+        void append(PendingChunk chunk, Map<String, Entry> appended, long[] added) throws IOException {
+            byte[] stored;
+            try {
+                stored = chunk.stored.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while compressing chunks");
+            } catch (ExecutionException e) {
+                throw new IOException("Chunk compression failed: " + e.getCause().getMessage(), e.getCause());
+            }
+
+            long offset = position;
+            write(ByteBuffer.wrap(stored));
+
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            entry.put(chunk.digest).putLong(offset).putInt(stored.length).putInt(chunk.rawSize);
+            index.write(entry.array(), 0, ENTRY_SIZE);
+            appended.put(chunk.hash, new Entry(null, offset, stored.length, chunk.rawSize));
+            count++;
+
+            added[0]++;
+            added[1] += chunk.rawSize;
+            added[2] += stored.length;
+        }
+
+        void finish() throws IOException {
+            long indexOffset = position;
+            write(ByteBuffer.wrap(index.toByteArray()));
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            footer.putLong(indexOffset).putInt(count).putInt(PACK_MAGIC).flip();
+            write(footer);
+            pack.force(false);
+        }
+
+        /**
+         * Returns the SHA-256 of everything written, once {@link #finish} has run.
+         */
+        byte[] digest() {
+            return digest.digest();
+        }
+
+        private void write(ByteBuffer buf) throws IOException {
+            digest.update(buf.duplicate());
+            while (buf.hasRemaining()) {
+                position += pack.write(buf, position);
+            }
+        }
+    }
+
+    /**
+     * Reassembles a file from its recipe. The output is checked against the content hash
+     * in the recipe and removed if it does not match.
+     * @param recipeFile The recipe written by {@link #put(File, File)}
+     * @param outputFile The destination file
+     * @return The size of the reassembled file in bytes
+     */
+    public long get(File recipeFile, File outputFile) throws IOException {
+        ChunkRecipe recipe = ChunkRecipe.read(recipeFile);
+        MessageDigest fileDigest = sha256();
+        BufferPool pool = BufferPool.shared();
+        boolean complete = false;
+
+        try (FileChannel out = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             ZstdDecompressCtx decompressor = new ZstdDecompressCtx()) {
+
+            long written = 0;
+            for (String hash : recipe.getChunkHashes()) {
+                Entry entry = entries.get(hash);
+                if (entry == null) {
+                    throw new IOException("Chunk " + hash + " of " + recipeFile.getName() + " is missing from the store");
+                }
+                try (BufferPool.Lease<byte[]> src = pool.array(entry.storedSize);
+                     BufferPool.Lease<byte[]> dst = pool.array(entry.rawSize)) {
+                    readChunk(entry, src.get());
+                    byte[] data = src.get();
+                    if (entry.storedSize != entry.rawSize) {
+                        int decoded;
+                        try {
+                            decoded = decompressor.decompressByteArray(dst.get(), 0, entry.rawSize,
+                                src.get(), 0, entry.storedSize);
+                        } catch (RuntimeException e) {
+                            throw new IOException("Failed to decode chunk " + hash + ": " + e.getMessage(), e);
+                        }
+                        if (decoded != entry.rawSize) {
+                            throw new IOException("Chunk " + hash + " decoded to " + decoded
+                                + " bytes, expected " + entry.rawSize);
+                        }
+                        data = dst.get();
+                    }
+                    fileDigest.update(data, 0, entry.rawSize);
+                    ByteBuffer buf = ByteBuffer.wrap(data, 0, entry.rawSize);
+                    while (buf.hasRemaining()) {
+                        out.write(buf);
+                    }
+                    written += entry.rawSize;
+                }
+            }
+
+            if (written != recipe.getSize() || !FileUtils.toHex(fileDigest.digest()).equals(recipe.getContentHash())) {
+                throw new IOException("Reassembled " + outputFile.getName() + " does not match its recipe");
+            }
+            complete = true;
+            return written;
+        } finally {
+            if (!complete) {
+                outputFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Checks whether every chunk of a recipe is present in the store.
+     */
+    public boolean containsAll(ChunkRecipe recipe) {
+        return entries.keySet().containsAll(recipe.getChunkHashes());
+    }
+
+    private void readChunk(Entry entry, byte[] dst) throws IOException {
+        FileChannel pack = packs.get(entry.pack);
+        if (pack == null) {
+            FileChannel opened = FileChannel.open(new File(directory, entry.pack).toPath(), StandardOpenOption.READ);
+            pack = packs.putIfAbsent(entry.pack, opened);
+            if (pack == null) {
+                pack = opened;
+            } else {
+                opened.close();
+            }
+        }
+        ByteBuffer buf = ByteBuffer.wrap(dst, 0, entry.storedSize);
+        while (buf.hasRemaining()) {
+            int n = pack.read(buf, entry.offset + buf.position());
+            if (n < 0) {
+                throw new EOFException("Unexpected end of chunk pack " + entry.pack);
+            }
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new EOFException("Unexpected end of chunk pack");
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    // Getters
+    public File getDirectory() {
+        return directory;
+    }
+
+    public int getChunkCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the total size of the pack files.
+     */
+    public long getPackSize() {
+        long total = 0;
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(PACK_EXTENSION));
+        for (File file : files != null ? files : new File[0]) {
+            total += file.length();
+        }
+        return total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            for (FileChannel pack : packs.values()) {
+                pack.close();
+            }
+            packs.clear();
+        } finally {
+            if (lock != null) {
+                lock.release();
+            }
+            lockChannel.close();
+        }
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
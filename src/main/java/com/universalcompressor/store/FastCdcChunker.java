@@ -0,0 +1,122 @@
+package com.universalcompressor.store;
+
+import java.io.*;
+import java.util.SplittableRandom;
+
+/**
+ * Content-defined chunker using the FastCDC gear hash with normalized chunking.
+ *
+ * Cut points depend only on the bytes near them, so inserting or removing data in one
+ * part of a file changes only the chunks around the edit; all other chunks keep the same
+ * boundaries and hashes and can be shared between files and versions.
+ */
+public class FastCdcChunker {
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // Fixed seed: chunk boundaries must be identical across machines and runs
+        SplittableRandom random = new SplittableRandom(0x5EEDC0DEL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final long maskSmall;  // stricter mask used before the average size
+    private final long maskLarge;  // looser mask used after the average size
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int start;
+    private int end;
+    private boolean eof;
+
+    /**
+     * @param in Source of the data to chunk
+     * @param minSize Minimum chunk size in bytes
+     * @param avgSize Target average chunk size in bytes (rounded to a power of two)
+     * @param maxSize Maximum chunk size in bytes
+     */
+    public FastCdcChunker(InputStream in, int minSize, int avgSize, int maxSize) {
+        if (minSize <= 0 || minSize > avgSize || avgSize > maxSize) {
+            throw new IllegalArgumentException("Chunk sizes must satisfy 0 < min <= avg <= max");
+        }
+        this.in = in;
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+        int bits = 31 - Integer.numberOfLeadingZeros(avgSize);
+        this.maskSmall = topBits(bits + 1);
+        this.maskLarge = topBits(Math.max(1, bits - 1));
+        this.buffer = new byte[maxSize * 2];
+    }
+
+    // The high bits of the gear hash depend on the last 64 bytes, so they make the best mask
+    private static long topBits(int count) {
+        return count >= 64 ? -1L : ((1L << count) - 1) << (64 - count);
+    }
+
+    /**
+     * Returns the next chunk, or null at the end of the input.
+     */
+    public byte[] next() throws IOException {
+        fill();
+        int available = end - start;
+        if (available == 0) {
+            return null;
+        }
+        int length = cutPoint(buffer, start, available);
+        byte[] chunk = new byte[length];
+        System.arraycopy(buffer, start, chunk, 0, length);
+        start += length;
+        return chunk;
+    }
+
+    private void fill() throws IOException {
+        if (eof || end - start >= maxSize) {
+            return;
+        }
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        while (end < buffer.length) {
+            int n = in.read(buffer, end, buffer.length - end);
+            if (n < 0) {
+                eof = true;
+                break;
+            }
+            end += n;
+        }
+    }
+
+    /**
+     * Finds the length of the chunk starting at {@code offset}.
+     */
+    int cutPoint(byte[] data, int offset, int length) {
+        if (length <= minSize) {
+            return length;
+        }
+        int limit = Math.min(length, maxSize);
+        int normal = Math.min(avgSize, limit);
+        long fingerprint = 0;
+        int i = minSize;
+        for (; i < normal; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[data[offset + i] & 0xFF];
+            if ((fingerprint & maskSmall) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < limit; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[data[offset + i] & 0xFF];
+            if ((fingerprint & maskLarge) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,401 @@
+package com.universalcompressor.tune;
+
+import com.universalcompressor.UniversalCompressor.CompressionMethod;
+import com.universalcompressor.codec.CodecStreams;
+import com.universalcompressor.util.CompressionConfig;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Benchmarks codecs and levels on samples of the repository's own assets and picks one
+ * per file pattern.
+ *
+ * For each pattern in file_patterns.compress and file_patterns.text_files, a few files
+ * spread across the size range are sampled. Every {@code codec:level} candidate is run on
+ * them with all cores busy, so the throughputs are per core under the same load as a
+ * parallel commit. Of the candidates on the Pareto front (no other candidate has a better
+ * ratio, compression and decompression speed at once), the one with the best ratio that
+ * still meets the speed target is recommended.
+ *
+ * Recommendations are written to auto_detect.patterns as {@code {"pattern", "method",
+ * "level", ...}} entries; the first matching pattern wins over the size-based defaults in
+ * the compressor, the watch daemon and the pre-commit hook.
+ */
+public class CodecTuner {
+    private static final Logger logger = LoggerFactory.getLogger(CodecTuner.class);
+
+    // xz 9 and zstd 22 need several hundred MB per encoder, too much with one per core
+    public static final List<String> DEFAULT_CANDIDATES = Collections.unmodifiableList(Arrays.asList(
+        "zstd:1", "zstd:3", "zstd:6", "zstd:9", "zstd:12", "zstd:15", "zstd:19",
+        "brotli:5", "brotli:9", "brotli:11", "xz:3", "xz:6", "bzip2:9", "gzip:6", "gzip:9"));
+
+    private static final long MIN_MEASURE_NANOS = 200_000_000L; // repeat small samples for stable timings
+    private static final double MB = 1024.0 * 1024.0;
+
+    private final Path root;
+    private final CompressionConfig config;
+    private final List<String> candidates;
+    private final int samplesPerPattern;
+    private final int maxSampleBytes;
+    private final int threads;
+
+    /**
+     * The measurements of one candidate on one pattern's samples.
+     */
+    public static final class Measurement {
+        private final String codec;
+        private final int level;
+        private final long originalBytes;
+        private final long compressedBytes;
+        private final double compressMbps;
+        private final double decompressMbps;
+        private boolean paretoOptimal;
+
+        Measurement(String codec, int level, long originalBytes, long compressedBytes,
+                    double compressMbps, double decompressMbps) {
+            this.codec = codec;
+            this.level = level;
+            this.originalBytes = originalBytes;
+            this.compressedBytes = compressedBytes;
+            this.compressMbps = compressMbps;
+            this.decompressMbps = decompressMbps;
+        }
+
+        // Getters
+        public String getCodec() { return codec; }
+        public int getLevel() { return level; }
+        public String getSpec() { return codec + ":" + level; }
+        public double getRatio() { return compressedBytes == 0 ? 0 : (double) originalBytes / compressedBytes; }
+        public double getCompressMbps() { return compressMbps; }
+        public double getDecompressMbps() { return decompressMbps; }
+        public boolean isParetoOptimal() { return paretoOptimal; }
+
+        boolean dominates(Measurement other) {
+            return getRatio() >= other.getRatio() && compressMbps >= other.compressMbps
+                && decompressMbps >= other.decompressMbps
+                && (getRatio() > other.getRatio() || compressMbps > other.compressMbps
+                    || decompressMbps > other.decompressMbps);
+        }
+    }
+
+    /**
+     * The outcome for one pattern.
+     */
+    public static final class PatternResult {
+        private final String pattern;
+        private final int sampleCount;
+        private final long sampleBytes;
+        private final List<Measurement> measurements;
+        private final Measurement choice;
+
+        PatternResult(String pattern, int sampleCount, long sampleBytes, List<Measurement> measurements,
+                      Measurement choice) {
+            this.pattern = pattern;
+            this.sampleCount = sampleCount;
+            this.sampleBytes = sampleBytes;
+            this.measurements = measurements;
+            this.choice = choice;
+        }
+
+        // Getters
+        public String getPattern() { return pattern; }
+        public int getSampleCount() { return sampleCount; }
+        public long getSampleBytes() { return sampleBytes; }
+        public List<Measurement> getMeasurements() { return measurements; }
+        public Measurement getChoice() { return choice; }
+    }
+
+    /**
+     * @param root The repository root that the patterns are relative to
+     * @param config Supplies the "tune" settings and receives the recommendations
+     */
+    public CodecTuner(Path root, CompressionConfig config) {
+        this.root = root.toAbsolutePath().normalize();
+        this.config = config;
+        List<String> configured = config.getStringList("tune.candidates");
+        this.candidates = configured.isEmpty() ? DEFAULT_CANDIDATES : configured;
+        this.samplesPerPattern = (int) Math.max(1, config.getLong("tune.samples_per_pattern", 8));
+        this.maxSampleBytes = (int) Math.min(Integer.MAX_VALUE - 8,
+            config.getLong("tune.max_sample_mb", 16) * 1024 * 1024);
+        int configuredThreads = (int) config.getLong("tune.threads", 0);
+        this.threads = configuredThreads > 0 ? configuredThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Samples and benchmarks every pattern and picks a candidate for each. Patterns are
+     * done one at a time, so only one pattern's samples are held in memory.
+     * @param targetCompressMbps Minimum compression throughput per core
+     * @param minDecompressMbps Minimum decompression throughput per core
+     * @return One result per pattern that had files to sample
+     */
+    public List<PatternResult> tune(double targetCompressMbps, double minDecompressMbps) throws IOException {
+        List<String> patterns = new ArrayList<>(config.getStringList("file_patterns.compress"));
+        for (String pattern : config.getStringList("file_patterns.text_files")) {
+            if (!patterns.contains(pattern)) {
+                patterns.add(pattern);
+            }
+        }
+        Map<String, List<Path>> matches = findFiles(patterns);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "codec-tuner");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<PatternResult> results = new ArrayList<>();
+            for (Map.Entry<String, List<Path>> entry : matches.entrySet()) {
+                List<byte[]> samples = sample(entry.getKey(), entry.getValue());
+                List<Future<Measurement>> futures = new ArrayList<>();
+                for (String spec : candidates) {
+                    futures.add(executor.submit(() -> measure(spec, samples)));
+                }
+                List<Measurement> measurements = new ArrayList<>();
+                for (int i = 0; i < candidates.size(); i++) {
+                    try {
+                        measurements.add(futures.get(i).get());
+                    } catch (ExecutionException e) {
+                        logger.warn("Candidate {} failed on {}: {}", candidates.get(i), entry.getKey(),
+                            e.getCause().getMessage());
+                    }
+                }
+                if (measurements.isEmpty()) {
+                    continue;
+                }
+                markParetoFront(measurements);
+                results.add(new PatternResult(entry.getKey(), samples.size(),
+                    samples.stream().mapToLong(s -> s.length).sum(), measurements,
+                    choose(measurements, targetCompressMbps, minDecompressMbps)));
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while benchmarking");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Records the chosen candidates in auto_detect.patterns and saves the configuration.
+     * Previously tuned patterns that had no files to sample this time are kept.
+     */
+    public void writeRecommendations(List<PatternResult> results) throws IOException {
+        Map<String, Object> byPattern = new LinkedHashMap<>();
+        Object previous = config.lookup("auto_detect.patterns");
+        if (previous instanceof List) {
+            for (Object item : (List<?>) previous) {
+                if (item instanceof Map && ((Map<?, ?>) item).get("pattern") instanceof String) {
+                    byPattern.put((String) ((Map<?, ?>) item).get("pattern"), item);
+                }
+            }
+        }
+        for (PatternResult result : results) {
+            Measurement choice = result.getChoice();
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("pattern", result.getPattern());
+            entry.put("method", choice.getCodec());
+            entry.put("level", (long) choice.getLevel());
+            entry.put("ratio", Math.round(choice.getRatio() * 100) / 100.0);
+            entry.put("compress_mbps", Math.round(choice.getCompressMbps()));
+            entry.put("decompress_mbps", Math.round(choice.getDecompressMbps()));
+            byPattern.put(result.getPattern(), entry);
+        }
+        config.set("auto_detect.patterns", new ArrayList<>(byPattern.values()));
+        config.save();
+    }
+
+    /**
+     * Returns the tuned codec for a file, as a {@code codec:level} spec.
+     * @param config The configuration holding auto_detect.patterns
+     * @param relative The file's path relative to the repository root
+     * @return The spec of the first matching pattern, or null if none matches
+     */
+    public static String recommendedMethod(CompressionConfig config, Path relative) {
+        Object patterns = config.lookup("auto_detect.patterns");
+        if (!(patterns instanceof List)) {
+            return null;
+        }
+        for (Object item : (List<?>) patterns) {
+            if (!(item instanceof Map)) {
+                continue;
+            }
+            Map<?, ?> entry = (Map<?, ?>) item;
+            Object pattern = entry.get("pattern");
+            Object method = entry.get("method");
+            if (pattern instanceof String && method instanceof String
+                    && FileSystems.getDefault().getPathMatcher("glob:" + pattern).matches(relative)) {
+                Object level = entry.get("level");
+                return level instanceof Number ? method + ":" + ((Number) level).intValue() : (String) method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Collects the files matching each pattern in one walk of the repository.
+     */
+    private Map<String, List<Path>> findFiles(List<String> patterns) throws IOException {
+        Map<String, PathMatcher> matchers = new LinkedHashMap<>();
+        for (String pattern : patterns) {
+            matchers.put(pattern, FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+        }
+        List<PathMatcher> exclude = new ArrayList<>();
+        for (String pattern : config.getStringList("file_patterns.exclude")) {
+            exclude.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+        }
+        long minSize = config.getLong("compression.min_file_size", 1024);
+
+        Map<String, List<Path>> matches = new LinkedHashMap<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return dir.getFileName() != null && dir.getFileName().toString().equals(".git")
+                    ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!attrs.isRegularFile() || attrs.size() < minSize) {
+                    return FileVisitResult.CONTINUE;
+                }
+                Path relative = root.relativize(file);
+                for (PathMatcher matcher : exclude) {
+                    if (matcher.matches(relative)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                }
+                for (Map.Entry<String, PathMatcher> entry : matchers.entrySet()) {
+                    if (entry.getValue().matches(relative)) {
+                        matches.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(file);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return matches;
+    }
+
+    /**
+     * Reads up to samplesPerPattern of a pattern's files, spread evenly over the size range.
+     */
+    private List<byte[]> sample(String pattern, List<Path> files) throws IOException {
+        files.sort(Comparator.comparingLong(p -> p.toFile().length()));
+        int count = Math.min(samplesPerPattern, files.size());
+        List<byte[]> data = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int index = count == 1 ? files.size() / 2 : (int) ((long) i * (files.size() - 1) / (count - 1));
+            data.add(readHead(files.get(index)));
+        }
+        logger.info("Sampled {} of {} files for {}", count, files.size(), pattern);
+        return data;
+    }
+
+    private byte[] readHead(Path file) throws IOException {
+        try (InputStream in = new FileInputStream(file.toFile())) {
+            byte[] data = new byte[(int) Math.min(maxSampleBytes, file.toFile().length())];
+            int length = 0;
+            int n;
+            while (length < data.length && (n = in.read(data, length, data.length - length)) != -1) {
+                length += n;
+            }
+            return length == data.length ? data : Arrays.copyOf(data, length);
+        }
+    }
+
+    /**
+     * Compresses and decompresses all samples with one candidate, repeating until the
+     * timings are long enough to be meaningful, and checks that the data round-trips.
+     */
+    private static Measurement measure(String spec, List<byte[]> samples) throws IOException {
+        int colon = spec.indexOf(':');
+        String codec = (colon < 0 ? spec : spec.substring(0, colon)).trim().toLowerCase();
+        int level = colon < 0 ? 9 : Integer.parseInt(spec.substring(colon + 1).trim());
+        CompressionMethod method = CodecStreams.methodOf(codec);
+        if (method == null) {
+            throw new IllegalArgumentException("Unknown codec: " + codec);
+        }
+
+        long originalBytes = 0;
+        long compressedBytes = 0;
+        long compressNanos = 0;
+        long decompressNanos = 0;
+        int rounds = 0;
+        byte[] sink = new byte[64 * 1024];
+        do {
+            for (byte[] sample : samples) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(sample.length / 2 + 1024);
+                long start = System.nanoTime();
+                try (OutputStream encoder = CodecStreams.openCompressing(compressed, codec, level)) {
+                    encoder.write(sample);
+                }
+                compressNanos += System.nanoTime() - start;
+                byte[] encoded = compressed.toByteArray();
+
+                long decoded = 0;
+                start = System.nanoTime();
+                try (InputStream decoder = CodecStreams.openDecompressing(new ByteArrayInputStream(encoded), method)) {
+                    int n;
+                    while ((n = decoder.read(sink)) != -1) {
+                        decoded += n;
+                    }
+                }
+                decompressNanos += System.nanoTime() - start;
+                if (decoded != sample.length) {
+                    throw new IOException(spec + " decoded " + decoded + " of " + sample.length + " bytes");
+                }
+                if (rounds == 0) {
+                    originalBytes += sample.length;
+                    compressedBytes += encoded.length;
+                }
+            }
+            rounds++;
+        } while (compressNanos < MIN_MEASURE_NANOS && originalBytes > 0);
+
+        double processed = (double) originalBytes * rounds / MB;
+        return new Measurement(codec, level, originalBytes, compressedBytes,
+            processed / Math.max(compressNanos, 1) * 1e9, processed / Math.max(decompressNanos, 1) * 1e9);
+    }
+
+    private static void markParetoFront(List<Measurement> measurements) {
+        for (Measurement candidate : measurements) {
+            candidate.paretoOptimal = measurements.stream().noneMatch(other -> other.dominates(candidate));
+        }
+    }
+
+    /**
+     * Picks the front member with the best ratio that meets both speed limits, or the
+     * fastest compressor on the front if none does.
+     */
+    private static Measurement choose(List<Measurement> measurements, double targetCompressMbps,
+                                      double minDecompressMbps) {
+        Measurement best = null;
+        Measurement fastest = null;
+        for (Measurement m : measurements) {
+            if (!m.paretoOptimal) {
+                continue;
+            }
+            if (fastest == null || m.compressMbps > fastest.compressMbps) {
+                fastest = m;
+            }
+            if (m.compressMbps >= targetCompressMbps && m.decompressMbps >= minDecompressMbps
+                    && (best == null || m.getRatio() > best.getRatio())) {
+                best = m;
+            }
+        }
+        return best != null ? best : fastest;
+    }
+}
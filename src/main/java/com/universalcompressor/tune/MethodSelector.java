@@ -0,0 +1,78 @@
+package com.universalcompressor.tune;
+
+import com.universalcompressor.store.ChunkStore;
+import com.universalcompressor.util.CompressionConfig;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks the compression method for an asset. The pre-commit hook (through the method-for
+ * command) and the watch daemon both ask this class, so the watcher precompresses with
+ * exactly the method the hook later looks up in the cache.
+ *
+ * The decision uses only the repository-relative path and the size, in this order:
+ * "dedup.patterns" go to the chunk store, then tuned "auto_detect.patterns", then
+ * "file_patterns.text_files" use "auto_detect.text_files", and other files are split
+ * by size. Content sniffing is deliberately left out, since MIME detection differs
+ * between platforms and tools.
+ */
+public class MethodSelector {
+    private final CompressionConfig config;
+    private final List<PathMatcher> dedup;
+    private final List<PathMatcher> textFiles;
+    private final long largeFileThreshold;
+    private final long mediumFileThreshold;
+
+    public MethodSelector(CompressionConfig config) {
+        this.config = config;
+        this.dedup = matchers(config.getStringList("dedup.patterns"));
+        this.textFiles = matchers(config.getStringList("file_patterns.text_files"));
+        this.largeFileThreshold = config.getLong("auto_detect.large_file_mb", 50) * 1024 * 1024;
+        this.mediumFileThreshold = config.getLong("auto_detect.medium_file_mb", 10) * 1024 * 1024;
+    }
+
+    private static List<PathMatcher> matchers(List<String> patterns) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String pattern : patterns) {
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+        }
+        return matchers;
+    }
+
+    /**
+     * Returns the method for a file.
+     * @param relative The file's path relative to the repository root
+     * @param size The file's size in bytes
+     * @return A method name, or a {@code codec:level} spec for tuned patterns
+     */
+    public String methodFor(Path relative, long size) {
+        if (matchesAny(dedup, relative)) {
+            return ChunkStore.METHOD;
+        }
+        String tuned = CodecTuner.recommendedMethod(config, relative);
+        if (tuned != null) {
+            return tuned;
+        }
+        if (matchesAny(textFiles, relative)) {
+            return config.getString("auto_detect.text_files", "brotli");
+        } else if (size > largeFileThreshold) {
+            return config.getString("auto_detect.large_binary_files", "zstd");
+        } else if (size > mediumFileThreshold) {
+            return config.getString("auto_detect.medium_binary_files", "xz");
+        }
+        return config.getString("auto_detect.small_binary_files", "gzip");
+    }
+
+    private static boolean matchesAny(List<PathMatcher> matchers, Path path) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
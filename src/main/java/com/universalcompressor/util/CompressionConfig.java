@@ -0,0 +1,456 @@
+package com.universalcompressor.util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Access to compression-config.json, the same file the git hooks read with jq.
+ *
+ * The file is located through the {@code uc.config} system property, falling back to
+ * compression-config.json in the working directory. A missing or unreadable file yields
+ * an empty configuration so every lookup returns its default.
+ */
+public class CompressionConfig {
+    private static final Logger logger = LoggerFactory.getLogger(CompressionConfig.class);
+
+    public static final String DEFAULT_FILE_NAME = "compression-config.json";
+
+    private static volatile CompressionConfig instance;
+
+    private final Path source;
+    private final Map<String, Object> root;
+
+    public CompressionConfig(Path source, Map<String, Object> root) {
+        this.source = source;
+        this.root = root;
+    }
+
+    /**
+     * Returns the process-wide configuration, loading it on first use.
+     */
+    public static CompressionConfig get() {
+        CompressionConfig config = instance;
+        if (config == null) {
+            synchronized (CompressionConfig.class) {
+                config = instance;
+                if (config == null) {
+                    Path path = Paths.get(System.getProperty("uc.config", DEFAULT_FILE_NAME));
+                    config = load(path);
+                    instance = config;
+                }
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Loads a configuration file, returning an empty configuration if it cannot be read.
+     */
+    @SuppressWarnings("unchecked")
+    public static CompressionConfig load(Path path) {
+        if (!Files.isRegularFile(path)) {
+            logger.debug("No configuration at {}, using defaults", path.toAbsolutePath());
+            return new CompressionConfig(path, new LinkedHashMap<>());
+        }
+        try {
+            String text = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+            Object parsed = Json.parse(text);
+            if (parsed instanceof Map) {
+                return new CompressionConfig(path, (Map<String, Object>) parsed);
+            }
+            logger.warn("Configuration {} is not a JSON object, using defaults", path);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Could not read configuration {}: {}", path, e.getMessage());
+        }
+        return new CompressionConfig(path, new LinkedHashMap<>());
+    }
+
+    public Path getSource() {
+        return source;
+    }
+
+    public Map<String, Object> getRoot() {
+        return root;
+    }
+
+    /**
+     * Looks up a value by dotted path, e.g. {@code "performance.max_memory_usage_mb"}.
+     * @return The value, or null if any segment is missing
+     */
+    @SuppressWarnings("unchecked")
+    public Object lookup(String dottedPath) {
+        Object current = root;
+        for (String key : dottedPath.split("\\.")) {
+            if (!(current instanceof Map)) {
+                return null;
+            }
+            current = ((Map<String, Object>) current).get(key);
+        }
+        return current;
+    }
+
+    public long getLong(String dottedPath, long defaultValue) {
+        Object value = lookup(dottedPath);
+        return value instanceof Number ? ((Number) value).longValue() : defaultValue;
+    }
+
+    public double getDouble(String dottedPath, double defaultValue) {
+        Object value = lookup(dottedPath);
+        return value instanceof Number ? ((Number) value).doubleValue() : defaultValue;
+    }
+
+    public boolean getBoolean(String dottedPath, boolean defaultValue) {
+        Object value = lookup(dottedPath);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+
+    public String getString(String dottedPath, String defaultValue) {
+        Object value = lookup(dottedPath);
+        return value instanceof String ? (String) value : defaultValue;
+    }
+
+    public List<String> getStringList(String dottedPath) {
+        Object value = lookup(dottedPath);
+        List<String> result = new ArrayList<>();
+        if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+                if (item instanceof String) {
+                    result.add((String) item);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets a value by dotted path, creating intermediate objects as needed.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void set(String dottedPath, Object value) {
+        String[] keys = dottedPath.split("\\.");
+        Map<String, Object> current = root;
+        for (int i = 0; i < keys.length - 1; i++) {
+            Object next = current.get(keys[i]);
+            if (!(next instanceof Map)) {
+                next = new LinkedHashMap<String, Object>();
+                current.put(keys[i], next);
+            }
+            current = (Map<String, Object>) next;
+        }
+        current.put(keys[keys.length - 1], value);
+    }
+
+    /**
+     * Writes the configuration back to the file it was loaded from, keeping the key order
+     * and the two-space layout of the checked-in file. The file is replaced atomically so
+     * that a hook reading it concurrently sees either version.
+     */
+    public synchronized void save() throws IOException {
+        Path target = source.toAbsolutePath();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(tmp, (Json.write(root) + "\n").getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        logger.info("Wrote configuration {}", target);
+    }
+
+    /**
+     * Minimal JSON reader producing Map, List, String, Double/Long, Boolean and null, and
+     * the matching writer.
+     */
+    static final class Json {
+        private final String text;
+        private int pos;
+
+        private Json(String text) {
+            this.text = text;
+        }
+
+        static Object parse(String text) {
+            Json json = new Json(text);
+            Object value = json.readValue();
+            json.skipWhitespace();
+            if (json.pos != text.length()) {
+                throw json.error("Trailing characters");
+            }
+            return value;
+        }
+
+        private Object readValue() {
+            skipWhitespace();
+            if (pos >= text.length()) {
+                throw error("Unexpected end of input");
+            }
+            char c = text.charAt(pos);
+            switch (c) {
+                case '{':
+                    return readObject();
+                case '[':
+                    return readArray();
+                case '"':
+                    return readString();
+                case 't':
+                    expect("true");
+                    return Boolean.TRUE;
+                case 'f':
+                    expect("false");
+                    return Boolean.FALSE;
+                case 'n':
+                    expect("null");
+                    return null;
+                default:
+                    return readNumber();
+            }
+        }
+
+        private Map<String, Object> readObject() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            pos++;
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return map;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = readString();
+                skipWhitespace();
+                if (peek() != ':') {
+                    throw error("Expected ':'");
+                }
+                pos++;
+                map.put(key, readValue());
+                skipWhitespace();
+                char c = peek();
+                pos++;
+                if (c == '}') {
+                    return map;
+                }
+                if (c != ',') {
+                    throw error("Expected ',' or '}'");
+                }
+            }
+        }
+
+        private List<Object> readArray() {
+            List<Object> list = new ArrayList<>();
+            pos++;
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return list;
+            }
+            while (true) {
+                list.add(readValue());
+                skipWhitespace();
+                char c = peek();
+                pos++;
+                if (c == ']') {
+                    return list;
+                }
+                if (c != ',') {
+                    throw error("Expected ',' or ']'");
+                }
+            }
+        }
+
+        private String readString() {
+            if (peek() != '"') {
+                throw error("Expected string");
+            }
+            pos++;
+            StringBuilder sb = new StringBuilder();
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) {
+                    break;
+                }
+                char e = text.charAt(pos++);
+                switch (e) {
+                    case 'n': sb.append('\n'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw error("Truncated \\u escape");
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException ex) {
+                            throw error("Invalid \\u escape");
+                        }
+                        pos += 4;
+                        break;
+                    default: sb.append(e);
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        private Number readNumber() {
+            int start = pos;
+            while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+            }
+            String number = text.substring(start, pos);
+            if (number.isEmpty()) {
+                throw error("Unexpected character");
+            }
+            if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+                return Long.parseLong(number);
+            }
+            return Double.parseDouble(number);
+        }
+
+        private void expect(String literal) {
+            if (!text.startsWith(literal, pos)) {
+                throw error("Expected " + literal);
+            }
+            pos += literal.length();
+        }
+
+        private char peek() {
+            if (pos >= text.length()) {
+                throw error("Unexpected end of input");
+            }
+            return text.charAt(pos);
+        }
+
+        private void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at offset " + pos);
+        }
+
+        private static final int LINE_WIDTH = 72;
+
+        static String write(Object value) {
+            StringBuilder sb = new StringBuilder();
+            writeValue(sb, value, "");
+            return sb.toString();
+        }
+
+        private static void writeValue(StringBuilder sb, Object value, String indent) {
+            if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                if (map.isEmpty()) {
+                    sb.append("{}");
+                    return;
+                }
+                String inner = indent + "  ";
+                sb.append("{\n");
+                Iterator<? extends Map.Entry<?, ?>> entries = map.entrySet().iterator();
+                while (entries.hasNext()) {
+                    Map.Entry<?, ?> entry = entries.next();
+                    sb.append(inner);
+                    writeString(sb, String.valueOf(entry.getKey()));
+                    sb.append(": ");
+                    writeValue(sb, entry.getValue(), inner);
+                    sb.append(entries.hasNext() ? ",\n" : "\n");
+                }
+                sb.append(indent).append('}');
+            } else if (value instanceof List) {
+                writeArray(sb, (List<?>) value, indent);
+            } else if (value instanceof String) {
+                writeString(sb, (String) value);
+            } else if (value instanceof Double || value instanceof Float) {
+                double d = ((Number) value).doubleValue();
+                if (Double.isNaN(d) || Double.isInfinite(d)) {
+                    sb.append("null");
+                } else {
+                    sb.append(value);
+                }
+            } else {
+                sb.append(value); // Long, Integer, Boolean or null
+            }
+        }
+
+        private static void writeArray(StringBuilder sb, List<?> list, String indent) {
+            if (list.isEmpty()) {
+                sb.append("[]");
+                return;
+            }
+            String inner = indent + "  ";
+            boolean scalars = list.stream().noneMatch(item -> item instanceof Map || item instanceof List);
+            if (scalars) {
+                StringBuilder inline = new StringBuilder("[");
+                for (int i = 0; i < list.size(); i++) {
+                    writeValue(inline, list.get(i), indent);
+                    inline.append(i < list.size() - 1 ? ", " : "]");
+                }
+                if (indent.length() + inline.length() <= LINE_WIDTH - 16) {
+                    sb.append(inline);
+                    return;
+                }
+            }
+            sb.append("[\n");
+            if (scalars) {
+                // Several short values per line, like the pattern lists in the checked-in file
+                int lineStart = sb.length();
+                sb.append(inner);
+                for (int i = 0; i < list.size(); i++) {
+                    StringBuilder item = new StringBuilder();
+                    writeValue(item, list.get(i), inner);
+                    if (sb.length() - lineStart > inner.length() && sb.length() - lineStart + item.length() > LINE_WIDTH) {
+                        sb.setLength(sb.length() - 1); // trailing space after the comma
+                        sb.append('\n');
+                        lineStart = sb.length();
+                        sb.append(inner);
+                    }
+                    sb.append(item).append(i < list.size() - 1 ? ", " : "\n");
+                }
+            } else {
+                for (int i = 0; i < list.size(); i++) {
+                    sb.append(inner);
+                    writeValue(sb, list.get(i), inner);
+                    sb.append(i < list.size() - 1 ? ",\n" : "\n");
+                }
+            }
+            sb.append(indent).append(']');
+        }
+
+        private static void writeString(StringBuilder sb, String s) {
+            sb.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '"': sb.append("\\\""); break;
+                    case '\\': sb.append("\\\\"); break;
+                    case '\n': sb.append("\\n"); break;
+                    case '\t': sb.append("\\t"); break;
+                    case '\r': sb.append("\\r"); break;
+                    case '\b': sb.append("\\b"); break;
+                    case '\f': sb.append("\\f"); break;
+                    default:
+                        if (c < 0x20) {
+                            sb.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            sb.append(c);
+                        }
+                }
+            }
+            sb.append('"');
+        }
+    }
+}
@@ -3,6 +3,9 @@ package com.universalcompressor.util;
 import java.io.*;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -92,4 +95,65 @@ public class FileUtils {
         
         return file.getPath();
     }
+    
+    /**
+     * Computes the SHA-256 of a file's contents.
+     * @param file The file to hash
+     * @return The hash as a lowercase hex string
+     */
+    public static String sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[1024 * 1024];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, len);
+            }
+        }
+        return toHex(digest.digest());
+    }
+    
+    /**
+     * Finds the root of the git work tree the process runs in, the same way the hooks do
+     * with {@code git rev-parse --show-toplevel}.
+     * @return The work tree root, or the current directory outside a repository or
+     *         when git is not installed
+     */
+    public static Path repositoryRoot() {
+        Path cwd = Paths.get("").toAbsolutePath();
+        try {
+            Process process = new ProcessBuilder("git", "rev-parse", "--show-toplevel")
+                .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+            String output;
+            try (InputStream in = process.getInputStream()) {
+                output = new String(in.readAllBytes(), "UTF-8").trim();
+            }
+            if (process.waitFor(10, TimeUnit.SECONDS) && process.exitValue() == 0 && !output.isEmpty()) {
+                return Paths.get(output);
+            }
+            process.destroyForcibly();
+        } catch (IOException e) {
+            // git not available; fall through
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return cwd;
+    }
+    
+    /**
+     * Converts bytes to a lowercase hex string.
+     */
+    public static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+            hex[i * 2 + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+        }
+        return new String(hex);
+    }
 }
@@ -0,0 +1,174 @@
+package com.universalcompressor.verify;
+
+import com.universalcompressor.UniversalCompressor.CompressionMethod;
+import com.universalcompressor.codec.CodecStreams;
+import com.universalcompressor.io.BufferPool;
+import com.universalcompressor.model.VerificationResult;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.compress.archivers.sevenz.SevenZArchiveEntry;
+import org.apache.commons.compress.archivers.sevenz.SevenZFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Verifies compressed archives by decoding them into a discarding sink. Nothing is
+ * written to disk; the embedded checksums of each format are checked by the decoders.
+ *
+ * Memory use is bounded: each worker leases one read buffer from the shared
+ * {@link BufferPool} and holds the decoder state of the single archive it is processing,
+ * and at most {@code 2 * threads} verification tasks are queued at any time regardless
+ * of how many files are submitted.
+ */
+public class ArchiveVerifier {
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveVerifier.class);
+
+    private static final int READ_BUFFER_SIZE = 1024 * 1024; // 1MB per worker
+    private static final Set<String> ARCHIVE_EXTENSIONS = new HashSet<>(Arrays.asList(
+        ".gz", ".gzip", ".bz2", ".bzip2", ".xz", ".7z", ".zst", ".zstd", ".ucsp", ".br", ".uc"));
+
+    private final int threads;
+
+    public ArchiveVerifier(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Expands the given paths into the list of archives to verify. Directories are walked
+     * recursively and only files with a known compressed extension are kept.
+     * @param paths Files and/or directories
+     * @return The archives found, in a stable order
+     */
+    public static List<File> collectArchives(List<String> paths) throws IOException {
+        List<File> archives = new ArrayList<>();
+        for (String p : paths) {
+            Path path = Paths.get(p);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> walk = Files.walk(path)) {
+                    archives.addAll(walk.filter(Files::isRegularFile)
+                        .filter(ArchiveVerifier::hasArchiveExtension)
+                        .sorted()
+                        .map(Path::toFile)
+                        .collect(Collectors.toList()));
+                }
+            } else {
+                archives.add(path.toFile());
+            }
+        }
+        return archives;
+    }
+
+    private static boolean hasArchiveExtension(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && ARCHIVE_EXTENSIONS.contains(name.substring(dot));
+    }
+
+    /**
+     * Verifies all archives concurrently.
+     * @param archives The archives to verify
+     * @return One result per archive, in the same order as the input
+     */
+    public List<VerificationResult> verifyAll(List<File> archives) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "verify-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        Semaphore inFlight = new Semaphore(threads * 2);
+        List<Future<VerificationResult>> futures = new ArrayList<>(archives.size());
+
+        try {
+            for (File archive : archives) {
+                inFlight.acquire();
+                futures.add(executor.submit(() -> {
+                    try (BufferPool.Lease<byte[]> lease = BufferPool.shared().array(READ_BUFFER_SIZE)) {
+                        return verify(archive, lease.get());
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+
+            List<VerificationResult> results = new ArrayList<>(archives.size());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    results.add(new VerificationResult(archives.get(i), null, false,
+                        String.valueOf(e.getCause()), archives.get(i).length(), 0, 0));
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Verifies a single archive by decoding it fully and discarding the output.
+     * @param archive The archive to verify
+     * @param buffer Scratch buffer used to drain the decoder
+     * @return The verification result; never throws for a corrupt archive
+     */
+    public static VerificationResult verify(File archive, byte[] buffer) {
+        long startTime = System.currentTimeMillis();
+        long compressedSize = archive.length();
+        CompressionMethod method = null;
+        long decoded = 0;
+
+        try {
+            method = CodecStreams.detect(archive);
+            if (method == null) {
+                return new VerificationResult(archive, null, false, "Unrecognised compression format",
+                    compressedSize, 0, System.currentTimeMillis() - startTime);
+            }
+
+            if (method == CompressionMethod.SEVEN_Z) {
+                decoded = drain7z(archive, buffer);
+            } else {
+                try (InputStream in = CodecStreams.openDecompressing(archive, method)) {
+                    int bytesRead;
+                    while ((bytesRead = in.read(buffer)) != -1) {
+                        decoded += bytesRead;
+                    }
+                }
+            }
+
+            long duration = System.currentTimeMillis() - startTime;
+            logger.debug("Verified {} ({}, {} -> {} bytes) in {} ms",
+                archive.getPath(), method, compressedSize, decoded, duration);
+            return new VerificationResult(archive, method.name(), true, "", compressedSize, decoded, duration);
+
+        } catch (Exception e) {
+            logger.debug("Verification of {} failed: {}", archive.getPath(), e.getMessage());
+            return new VerificationResult(archive, method == null ? null : method.name(), false,
+                e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage(),
+                compressedSize, decoded, System.currentTimeMillis() - startTime);
+        }
+    }
+
+    private static long drain7z(File archive, byte[] buffer) throws IOException {
+        long decoded = 0;
+        try (SevenZFile sevenZ = new SevenZFile(archive)) {
+            SevenZArchiveEntry entry;
+            while ((entry = sevenZ.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                int bytesRead;
+                while ((bytesRead = sevenZ.read(buffer)) != -1) {
+                    decoded += bytesRead;
+                }
+            }
+        }
+        return decoded;
+    }
+}
@@ -0,0 +1,245 @@
+package com.universalcompressor.watch;
+
+import com.universalcompressor.UniversalCompressor;
+import com.universalcompressor.model.CompressionResult;
+import com.universalcompressor.store.ChunkStore;
+import com.universalcompressor.tune.MethodSelector;
+import com.universalcompressor.util.CompressionConfig;
+import com.universalcompressor.util.FileUtils;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the content tree and compresses changed assets in the background so that the
+ * pre-commit hook finds them already compressed in the {@link PrecompressCache}.
+ *
+ * Events are debounced: a file is only compressed once it has not changed for the
+ * configured delay, so an editor saving in several steps triggers a single compression.
+ * Workers run at minimum thread priority; on Linux the JVM only honours thread priorities
+ * when the whole process is started with {@code nice}.
+ */
+public class CompressionWatcher implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(CompressionWatcher.class);
+
+    private final Path root;
+    private final Path repoRoot;
+    private final PrecompressCache cache;
+    private final List<PathMatcher> include;
+    private final List<PathMatcher> exclude;
+    private final long debounceMs;
+    private final long minFileSize;
+    private final long maxCacheBytes;
+    private final MethodSelector methods;
+    private final String fixedMethod;
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private final Map<Path, Long> pending = new ConcurrentHashMap<>();
+    private final Set<Path> running = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService workers;
+
+    /**
+     * @param root The directory tree to watch
+     * @param cache Where finished compressions are stored
+     * @param config Supplies file patterns, thresholds and the "watch" settings
+     */
+    public CompressionWatcher(Path root, PrecompressCache cache, CompressionConfig config) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.repoRoot = FileUtils.repositoryRoot();
+        this.cache = cache;
+        this.include = matchers(config.getStringList("file_patterns.compress"));
+        this.exclude = matchers(config.getStringList("file_patterns.exclude"));
+        this.debounceMs = config.getLong("watch.debounce_ms", 2000);
+        this.minFileSize = config.getLong("compression.min_file_size", 1024);
+        this.maxCacheBytes = config.getLong("watch.cache_max_mb", 20480) * 1024 * 1024;
+        // The pre-commit hook asks the same selector, so its cache lookups hit
+        this.methods = new MethodSelector(config);
+        String method = config.getString("watch.method", "auto");
+        this.fixedMethod = "auto".equalsIgnoreCase(method) ? null : method;
+
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "watch-debounce");
+            t.setDaemon(true);
+            return t;
+        });
+        int threads = (int) Math.max(1, config.getLong("watch.threads", 1));
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "watch-compressor");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    private static List<PathMatcher> matchers(List<String> patterns) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String pattern : patterns) {
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+        }
+        return matchers;
+    }
+
+    /**
+     * Watches until the thread is interrupted or the watcher is closed. Files already in
+     * the tree are queued on start so that changes made while the daemon was down are
+     * picked up as well.
+     */
+    public void run() throws IOException {
+        cache.clearTemporaryFiles();
+        registerTree(root);
+        scheduler.scheduleWithFixedDelay(this::dispatchSettled,
+            debounceMs, Math.max(100, debounceMs / 4), TimeUnit.MILLISECONDS);
+        logger.info("Watching {} for changes (cache: {})", root, cache.getDirectory());
+
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = keys.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    logger.warn("Watch events were lost; rescanning {}", root);
+                    registerTree(root);
+                    continue;
+                }
+                if (dir == null) {
+                    continue;
+                }
+                Path child = dir.resolve((Path) event.context());
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    registerTree(child);
+                } else if (event.kind() != ENTRY_DELETE) {
+                    pending.put(child, System.currentTimeMillis());
+                }
+            }
+            if (!key.reset()) {
+                keys.remove(key);
+            }
+        }
+    }
+
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!keys.containsValue(dir)) {
+                    keys.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    pending.putIfAbsent(file, 0L);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                logger.debug("Cannot visit {}: {}", file, e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // Hands files that have been quiet for the debounce delay to the workers
+    private void dispatchSettled() {
+        long cutoff = System.currentTimeMillis() - debounceMs;
+        for (Map.Entry<Path, Long> entry : pending.entrySet()) {
+            Path file = entry.getKey();
+            if (entry.getValue() > cutoff || running.contains(file)) {
+                continue;
+            }
+            if (pending.remove(file, entry.getValue()) && running.add(file)) {
+                workers.execute(() -> {
+                    try {
+                        process(file);
+                    } catch (Exception e) {
+                        logger.warn("Background compression of {} failed: {}", file, e.getMessage());
+                    } finally {
+                        running.remove(file);
+                    }
+                });
+            }
+        }
+    }
+
+    private void process(Path path) throws IOException {
+        File file = path.toFile();
+        if (!isCandidate(path)) {
+            return;
+        }
+        long size = file.length();
+        long modified = file.lastModified();
+        String method = fixedMethod != null ? fixedMethod
+            : methods.methodFor(repoRoot.relativize(path.toAbsolutePath()), size);
+        // The hook writes these to the chunk store itself; there is nothing to precompress
+        if (ChunkStore.METHOD.equals(method)) {
+            return;
+        }
+        String hash = FileUtils.sha256(file);
+        if (cache.contains(hash, method)) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        File tmp = cache.newTempFile();
+        try {
+            CompressionResult result = UniversalCompressor.compressFile(file, tmp, method);
+            // A file changed during compression is requeued by its own watch event
+            if (!result.isSuccess() || file.length() != size || file.lastModified() != modified) {
+                return;
+            }
+            cache.put(hash, method, tmp);
+            logger.info("Precompressed {} with {} ({} -> {}) in {} ms", repoRoot.relativize(path.toAbsolutePath()),
+                method, FileUtils.formatFileSize(size), FileUtils.formatFileSize(cache.entryFor(hash, method).length()),
+                System.currentTimeMillis() - startTime);
+        } finally {
+            tmp.delete();
+        }
+        cache.prune(maxCacheBytes);
+    }
+
+    private boolean isCandidate(Path path) {
+        if (!Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+            return false;
+        }
+        Path relative = repoRoot.relativize(path.toAbsolutePath());
+        if (matchesAny(exclude, relative) || !matchesAny(include, relative)) {
+            return false;
+        }
+        return path.toFile().length() >= minFileSize;
+    }
+
+    private static boolean matchesAny(List<PathMatcher> matchers, Path path) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdownNow();
+        workers.shutdownNow();
+        watchService.close();
+    }
+}
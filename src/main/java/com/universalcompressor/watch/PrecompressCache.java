@@ -0,0 +1,168 @@
+package com.universalcompressor.watch;
+
+import com.universalcompressor.util.CompressionConfig;
+import com.universalcompressor.util.FileUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local cache of compressed files keyed by the SHA-256 of the uncompressed content, the
+ * compression method and a fingerprint of the settings that shape the output (tiering,
+ * levels, window). Entries are named {@code <sha256>.<method>.<settings>}; a file with the
+ * same content compressed with the same method and settings always produces the same
+ * output, so the pre-commit hook can reuse an entry instead of compressing again. After a
+ * settings change, such as toggling tiering.enabled, old entries no longer match and age
+ * out on prune.
+ */
+public class PrecompressCache {
+    private static final Logger logger = LoggerFactory.getLogger(PrecompressCache.class);
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Config sections that change what compressFile writes for a given method
+    private static final String[] OUTPUT_SETTINGS = {"tiering", "sparse", "zstd", "compression_methods", "race"};
+
+    private final File directory;
+    private final String settings;
+
+    /**
+     * @param directory The cache directory
+     * @param settings Fingerprint of the settings the entries were compressed with
+     */
+    public PrecompressCache(File directory, String settings) {
+        this.directory = directory;
+        this.settings = settings;
+    }
+
+    /**
+     * Creates the cache configured under "watch.cache_dir", keyed by the current settings.
+     */
+    public static PrecompressCache fromConfig(CompressionConfig config) {
+        return new PrecompressCache(new File(config.getString("watch.cache_dir", ".uc-cache")),
+            settingsFingerprint(config));
+    }
+
+    /**
+     * Hashes the config sections that affect compressed output, so that the hook and the
+     * watcher only share entries written with the same settings.
+     */
+    static String settingsFingerprint(CompressionConfig config) {
+        StringBuilder text = new StringBuilder();
+        for (String section : OUTPUT_SETTINGS) {
+            text.append(section).append('=').append(config.lookup(section)).append('\n');
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest(text.toString().getBytes(StandardCharsets.UTF_8));
+            return FileUtils.toHex(digest).substring(0, 12);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Returns the cache file for the given content hash and method, whether or not it exists.
+     */
+    public File entryFor(String contentHash, String method) {
+        // Tuned methods carry a level ("zstd:9"); colons are not allowed in Windows file names
+        return new File(directory, contentHash + "." + method.toLowerCase().replace(':', '-') + "." + settings);
+    }
+
+    public boolean contains(String contentHash, String method) {
+        return entryFor(contentHash, method).isFile();
+    }
+
+    /**
+     * Copies the cached compressed form of a file to the destination if one is ready.
+     * @param source The uncompressed file
+     * @param method The compression method the caller would use
+     * @param destination Where to write the compressed file
+     * @return true on a cache hit, false if the caller has to compress the file itself
+     */
+    public boolean fetch(File source, String method, File destination) throws IOException {
+        if (!directory.isDirectory()) {
+            return false;
+        }
+        File entry = entryFor(FileUtils.sha256(source), method);
+        if (!entry.isFile()) {
+            return false;
+        }
+        Files.copy(entry.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        entry.setLastModified(System.currentTimeMillis()); // keeps recently used entries on prune
+        logger.debug("Cache hit for {} ({})", source.getName(), method);
+        return true;
+    }
+
+    /**
+     * Creates a temporary file in the cache directory for a compression in progress.
+     */
+    public File newTempFile() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create cache directory: " + directory);
+        }
+        return File.createTempFile("pending-", TEMP_SUFFIX, directory);
+    }
+
+    /**
+     * Publishes a finished compressed file under its content hash. The rename is atomic, so
+     * a concurrent {@link #fetch} never sees a partial entry.
+     */
+    public void put(String contentHash, String method, File compressed) throws IOException {
+        Files.move(compressed.toPath(), entryFor(contentHash, method).toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Removes temporary files left behind by an interrupted run.
+     */
+    public void clearTemporaryFiles() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(TEMP_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits in the given size.
+     * @param maxBytes Maximum total size of the cache in bytes
+     */
+    public void prune(long maxBytes) {
+        File[] files = directory.listFiles((dir, name) -> !name.endsWith(TEMP_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            long size = file.length();
+            if (file.delete()) {
+                total -= size;
+                logger.debug("Evicted {} from the compression cache", file.getName());
+            }
+        }
+    }
+
+    // Getters
+    public File getDirectory() {
+        return directory;
+    }
+}
@@ -0,0 +1,144 @@
+package com.universalcompressor.codec;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelBrotliTest {
+    private static final int MB = 1024 * 1024;
+    private static final int QUALITY = 1;
+    private static final int WINDOW = 22;
+    private static final int HEADER_SIZE = 12;
+    private static final int FOOTER_SIZE = 8;
+    private static final int ENTRY_SIZE = 8;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void partialLastBlockRoundTrips() throws IOException {
+        byte[] data = text(ParallelBrotli.BLOCK_SIZE + 300 * 1024 + 7, 1);
+        File compressed = compress(data, 2);
+
+        assertTrue(ParallelBrotli.isParallelBrotli(compressed));
+        assertEquals(2, blockCount(compressed));
+        assertArrayEquals(data, decompress(compressed, 2));
+        assertArrayEquals(data, readStream(compressed));
+    }
+
+    @Test
+    void singleBlockAndEmptyInputsRoundTrip() throws IOException {
+        byte[] data = text(MB + 3, 2);
+        File compressed = compress(data, 4);
+        assertEquals(1, blockCount(compressed));
+        assertArrayEquals(data, decompress(compressed, 1));
+
+        File empty = compress(new byte[0], 1);
+        assertArrayEquals(new byte[0], decompress(empty, 1));
+        assertArrayEquals(new byte[0], readStream(empty));
+    }
+
+    @Test
+    void corruptFooterAndIndexAreRejected() throws IOException {
+        byte[] data = text(2 * MB, 3);
+        File compressed = compress(data, 2);
+        long size = compressed.length();
+
+        File badMagic = corrupt(compressed, "magic", size - 1, 0xFF);
+        assertThrows(IOException.class, () -> ParallelBrotli.decompress(badMagic, dir.resolve("out1").toFile(), 2));
+        assertThrows(IOException.class, () -> ParallelBrotli.openDecompressing(badMagic));
+
+        File badCount = corrupt(compressed, "count", size - FOOTER_SIZE, 0x02);
+        assertThrows(IOException.class, () -> ParallelBrotli.decompress(badCount, dir.resolve("out2").toFile(), 2));
+
+        // The block's compressed size no longer adds up to the index position
+        File badEntry = corrupt(compressed, "entry", size - FOOTER_SIZE - ENTRY_SIZE, 0x01);
+        assertThrows(IOException.class, () -> ParallelBrotli.decompress(badEntry, dir.resolve("out3").toFile(), 2));
+
+        // The block decodes to fewer bytes than the index claims
+        File badRawSize = corrupt(compressed, "raw", size - FOOTER_SIZE - ENTRY_SIZE + 4, 0x01);
+        assertThrows(IOException.class, () -> ParallelBrotli.decompress(badRawSize, dir.resolve("out4").toFile(), 2));
+    }
+
+    @Test
+    void headerRecordsQualityAndBlockSize() throws IOException {
+        File compressed = compress(text(64 * 1024, 4), 1);
+        byte[] header = new byte[HEADER_SIZE];
+        try (InputStream in = new FileInputStream(compressed)) {
+            assertEquals(HEADER_SIZE, in.read(header));
+        }
+        assertEquals(QUALITY, header[5]);
+        assertEquals(WINDOW, header[6]);
+        assertEquals(ParallelBrotli.BLOCK_SIZE,
+            (header[8] & 0xFF) | (header[9] & 0xFF) << 8 | (header[10] & 0xFF) << 16 | (header[11] & 0xFF) << 24);
+    }
+
+    @Test
+    void qualityDropsWithInputSize() {
+        assertEquals(11, ParallelBrotli.qualityFor(4L * MB, 11));
+        assertEquals(9, ParallelBrotli.qualityFor(4L * MB + 1, 11));
+        assertEquals(9, ParallelBrotli.qualityFor(32L * MB, 11));
+        assertEquals(7, ParallelBrotli.qualityFor(512L * MB, 11));
+        assertEquals(5, ParallelBrotli.qualityFor(2048L * MB, 11));
+        assertEquals(6, ParallelBrotli.qualityFor(MB, 6));
+    }
+
+    private File compress(byte[] data, int threads) throws IOException {
+        File input = dir.resolve("input.txt").toFile();
+        Files.write(input.toPath(), data);
+        File output = dir.resolve("output.br").toFile();
+        assertEquals(ParallelBrotli.compress(input, output, QUALITY, WINDOW, threads), output.length());
+        return output;
+    }
+
+    private byte[] decompress(File compressed, int threads) throws IOException {
+        File output = dir.resolve("restored.txt").toFile();
+        assertEquals(ParallelBrotli.decompress(compressed, output, threads), output.length());
+        return Files.readAllBytes(output.toPath());
+    }
+
+    private static byte[] readStream(File compressed) throws IOException {
+        try (InputStream in = ParallelBrotli.openDecompressing(compressed)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1 << 16];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static int blockCount(File compressed) throws IOException {
+        byte[] bytes = Files.readAllBytes(compressed.toPath());
+        int at = bytes.length - FOOTER_SIZE;
+        return (bytes[at] & 0xFF) | (bytes[at + 1] & 0xFF) << 8 | (bytes[at + 2] & 0xFF) << 16 | (bytes[at + 3] & 0xFF) << 24;
+    }
+
+    private File corrupt(File source, String name, long offset, int xor) throws IOException {
+        byte[] bytes = Files.readAllBytes(source.toPath());
+        bytes[(int) offset] ^= (byte) xor;
+        File copy = dir.resolve(name + ".br").toFile();
+        Files.write(copy.toPath(), bytes);
+        return copy;
+    }
+
+    // Lines of words from a small vocabulary, like the text assets this container is for
+    private static byte[] text(int size, long seed) {
+        String[] words = {"vertex", "normal", "texture", "material", "shader", "bone", "frame", "mesh"};
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder(size + 16);
+        while (sb.length() < size) {
+            sb.append(words[random.nextInt(words.length)]).append(random.nextInt(1000))
+                .append(random.nextInt(8) == 0 ? '\n' : ' ');
+        }
+        sb.setLength(size);
+        return sb.toString().getBytes();
+    }
+}
@@ -0,0 +1,171 @@
+package com.universalcompressor.codec;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SeekableZstdTest {
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int FOOTER_SIZE = 9;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void partialLastFrameRoundTrips() throws IOException {
+        byte[] data = compressible(10 * BLOCK_SIZE + 777, 1);
+        File compressed = compress(data);
+
+        try (FileChannel channel = FileChannel.open(compressed.toPath(), StandardOpenOption.READ)) {
+            SeekableZstd.SeekTable table = SeekableZstd.readSeekTable(channel);
+            assertEquals(11, table.getFrameCount());
+            assertEquals(data.length, table.getDecompressedSize());
+            assertEquals(BLOCK_SIZE, table.getDecompressedSize(0));
+            assertEquals(777, table.getDecompressedSize(10));
+            assertEquals(0, table.getCompressedOffset(0));
+            assertEquals(10, table.frameFor(data.length - 1));
+            assertEquals(1, table.frameFor(BLOCK_SIZE));
+        }
+        assertArrayEquals(data, decompress(compressed));
+        assertFalse(CheckpointJournal.journalFor(dir.resolve("restored").toFile()).exists());
+    }
+
+    @Test
+    void exactMultipleOfTheBlockSizeRoundTrips() throws IOException {
+        byte[] data = compressible(4 * BLOCK_SIZE, 2);
+        File compressed = compress(data);
+
+        try (FileChannel channel = FileChannel.open(compressed.toPath(), StandardOpenOption.READ)) {
+            assertEquals(4, SeekableZstd.readSeekTable(channel).getFrameCount());
+        }
+        assertArrayEquals(data, decompress(compressed));
+    }
+
+    @Test
+    void outputIsAnOrdinaryZstdStream() throws IOException {
+        byte[] data = compressible(3 * BLOCK_SIZE + 5, 3);
+        File compressed = compress(data);
+
+        // Regular decoders skip the seek table as a skippable frame
+        try (InputStream in = new ZstdInputStream(new FileInputStream(compressed))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            assertArrayEquals(data, out.toByteArray());
+        }
+    }
+
+    @Test
+    void emptyInputRoundTrips() throws IOException {
+        File compressed = compress(new byte[0]);
+
+        try (FileChannel channel = FileChannel.open(compressed.toPath(), StandardOpenOption.READ)) {
+            assertEquals(0, SeekableZstd.readSeekTable(channel).getFrameCount());
+        }
+        assertArrayEquals(new byte[0], decompress(compressed));
+    }
+
+    @Test
+    void seekTableEncodingMatchesTheFormat() throws IOException {
+        byte[] table = SeekableZstd.encodeSeekTable(new int[] {10, 20}, new int[] {100, 50}, 2);
+        File file = dir.resolve("frames.zst").toFile();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[30]);
+            out.write(table);
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            assertTrue(SeekableZstd.isSeekable(channel));
+            SeekableZstd.SeekTable seekTable = SeekableZstd.readSeekTable(channel);
+            assertEquals(2, seekTable.getFrameCount());
+            assertEquals(10, seekTable.getCompressedOffset(1));
+            assertEquals(20, seekTable.getCompressedSize(1));
+            assertEquals(150, seekTable.getDecompressedSize());
+        }
+    }
+
+    @Test
+    void corruptSeekTableIsRejected() throws IOException {
+        byte[] data = compressible(5 * BLOCK_SIZE + 100, 4);
+        File compressed = compress(data);
+        long size = compressed.length();
+        int tableSize = 8 + 6 * 8 + FOOTER_SIZE;
+
+        File badMagic = corrupt(compressed, "magic", size - 1, 0xFF);
+        assertFalse(SeekableZstdReader.isSeekable(badMagic));
+        assertSeekTableRejected(badMagic);
+
+        File badCount = corrupt(compressed, "count", size - FOOTER_SIZE, 0x40);
+        assertSeekTableRejected(badCount);
+
+        File badFrameHeader = corrupt(compressed, "header", size - tableSize + 4, 0x01);
+        assertSeekTableRejected(badFrameHeader);
+
+        File badEntry = corrupt(compressed, "entry", size - tableSize + 8 + 3, 0x10);
+        assertSeekTableRejected(badEntry);
+    }
+
+    @Test
+    void failedDecompressionLeavesNoEmptyJournal() throws IOException {
+        File compressed = compress(compressible(2 * BLOCK_SIZE, 5));
+        File corrupt = corrupt(compressed, "magic", compressed.length() - 1, 0xFF);
+        File output = dir.resolve("restored").toFile();
+
+        assertThrows(IOException.class, () -> SeekableZstdReader.decompress(corrupt, output));
+        assertFalse(CheckpointJournal.journalFor(output).exists());
+    }
+
+    private void assertSeekTableRejected(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            assertThrows(IOException.class, () -> SeekableZstd.readSeekTable(channel));
+        }
+        assertThrows(IOException.class, () -> SeekableZstdReader.decompress(file, dir.resolve("out").toFile()));
+    }
+
+    private File compress(byte[] data) throws IOException {
+        File input = dir.resolve("input.bin").toFile();
+        Files.write(input.toPath(), data);
+        File output = dir.resolve("output.zst").toFile();
+        new SeekableZstdWriter(3, BLOCK_SIZE, 2).compress(input, output);
+        assertFalse(CheckpointJournal.journalFor(output).exists());
+        return output;
+    }
+
+    private byte[] decompress(File compressed) throws IOException {
+        File output = dir.resolve("restored").toFile();
+        assertEquals(SeekableZstdReader.decompress(compressed, output), output.length());
+        return Files.readAllBytes(output.toPath());
+    }
+
+    private File corrupt(File source, String name, long offset, int xor) throws IOException {
+        byte[] bytes = Files.readAllBytes(source.toPath());
+        bytes[(int) offset] ^= (byte) xor;
+        File copy = dir.resolve(name + ".zst").toFile();
+        Files.write(copy.toPath(), bytes);
+        return copy;
+    }
+
+    // Random words from a small vocabulary, so frames actually compress
+    private static byte[] compressible(int size, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,190 @@
+package com.universalcompressor.codec;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SparseZstdTest {
+    private static final int MB = 1024 * 1024;
+    private static final int BUFFER_SIZE = 8 * MB; // the encoder's read buffer
+    private static final int FOOTER_SIZE = 16;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void runsStraddlingTheBufferBoundaryRoundTrip() throws IOException {
+        byte[] data = random(BUFFER_SIZE * 2 + 5 * SparseZstd.BLOCK_SIZE, 1);
+        // A non-zero run and a zero run, each crossing a buffer boundary of the encoder
+        Arrays.fill(data, BUFFER_SIZE - 64 * SparseZstd.BLOCK_SIZE, BUFFER_SIZE + 64 * SparseZstd.BLOCK_SIZE, (byte) 0x7F);
+        Arrays.fill(data, 2 * BUFFER_SIZE - 32 * SparseZstd.BLOCK_SIZE, 2 * BUFFER_SIZE + 3 * SparseZstd.BLOCK_SIZE, (byte) 0);
+
+        File compressed = compress(data, SparseZstd.DEFAULT_MIN_RUN);
+
+        assertEquals(2, runCount(compressed), "each run is recorded once");
+        assertTrue(compressed.length() < data.length - 600 * 1024, "runs are kept out of the encoder");
+        assertArrayEquals(data, decompress(compressed));
+        assertArrayEquals(data, readStream(compressed));
+    }
+
+    @Test
+    void shortRunsAreWrittenBackInline() throws IOException {
+        byte[] data = random(MB, 2);
+        // Shorter than the minimum run, so the constant blocks stay in the zstd stream
+        Arrays.fill(data, 4 * SparseZstd.BLOCK_SIZE, 8 * SparseZstd.BLOCK_SIZE, (byte) 0x11);
+        Arrays.fill(data, 40 * SparseZstd.BLOCK_SIZE, 44 * SparseZstd.BLOCK_SIZE, (byte) 0);
+
+        File compressed = compress(data, SparseZstd.DEFAULT_MIN_RUN);
+
+        assertEquals(0, runCount(compressed));
+        assertArrayEquals(data, decompress(compressed));
+        assertArrayEquals(data, readStream(compressed));
+    }
+
+    @Test
+    void adjacentRunsWithDifferentValuesAreSplit() throws IOException {
+        byte[] data = random(MB, 3);
+        Arrays.fill(data, 0, 32 * SparseZstd.BLOCK_SIZE, (byte) 0);
+        Arrays.fill(data, 32 * SparseZstd.BLOCK_SIZE, 64 * SparseZstd.BLOCK_SIZE, (byte) 0x22);
+
+        File compressed = compress(data, SparseZstd.DEFAULT_MIN_RUN);
+
+        assertEquals(2, runCount(compressed));
+        assertArrayEquals(data, decompress(compressed));
+    }
+
+    @Test
+    void partialLastBlockRoundTrips() throws IOException {
+        byte[] data = random(3 * MB + 1234, 4);
+        // Constant up to the end of the file; the partial last block must not become a run
+        Arrays.fill(data, 2 * MB, data.length, (byte) 0);
+
+        File compressed = compress(data, SparseZstd.DEFAULT_MIN_RUN);
+
+        assertEquals(1, runCount(compressed));
+        byte[] restored = decompress(compressed);
+        assertEquals(data.length, restored.length);
+        assertArrayEquals(data, restored);
+        assertArrayEquals(data, readStream(compressed));
+    }
+
+    @Test
+    void emptyAndAllConstantInputsRoundTrip() throws IOException {
+        assertArrayEquals(new byte[0], decompress(compress(new byte[0], SparseZstd.DEFAULT_MIN_RUN)));
+
+        byte[] zeros = new byte[4 * MB];
+        File compressed = compress(zeros, SparseZstd.DEFAULT_MIN_RUN);
+        assertEquals(1, runCount(compressed));
+        assertArrayEquals(zeros, decompress(compressed));
+    }
+
+    @Test
+    void tierIsRecordedInTheHeader() throws IOException {
+        File input = write(random(MB, 5));
+        File untiered = dir.resolve("untiered" + SparseZstd.EXTENSION).toFile();
+        File fast = dir.resolve("fast" + SparseZstd.EXTENSION).toFile();
+        SparseZstd.compress(input, untiered, 3, 0, SparseZstd.DEFAULT_MIN_RUN);
+        SparseZstd.compress(input, fast, 3, TieredZstd.TIER_FAST, 0, SparseZstd.DEFAULT_MIN_RUN);
+
+        assertTrue(SparseZstd.isSparse(fast));
+        assertNull(SparseZstd.readTag(untiered));
+        TieredZstd.Tag tag = SparseZstd.readTag(fast);
+        assertEquals(TieredZstd.TIER_FAST, tag.getTier());
+        assertEquals(3, tag.getLevel());
+        assertEquals(MB, tag.getContentSize());
+    }
+
+    @Test
+    void corruptFooterIsRejected() throws IOException {
+        byte[] data = random(2 * MB, 6);
+        Arrays.fill(data, MB, MB + 32 * SparseZstd.BLOCK_SIZE, (byte) 0);
+        File compressed = compress(data, SparseZstd.DEFAULT_MIN_RUN);
+        long size = compressed.length();
+
+        File badMagic = corrupt(compressed, "magic", size - 4, 0xFF);
+        assertThrows(IOException.class, () -> SparseZstd.decompress(badMagic, dir.resolve("out1").toFile()));
+
+        File badCount = corrupt(compressed, "count", size - 8, 0x05);
+        assertThrows(IOException.class, () -> SparseZstd.decompress(badCount, dir.resolve("out2").toFile()));
+
+        File badOffset = corrupt(compressed, "offset", size - FOOTER_SIZE, 0x01);
+        assertThrows(IOException.class, () -> SparseZstd.openDecompressing(badOffset));
+
+        File badHeader = corrupt(compressed, "header", 4, 0x7F);
+        assertThrows(IOException.class, () -> SparseZstd.decompress(badHeader, dir.resolve("out3").toFile()));
+    }
+
+    @Test
+    void truncatedContainerIsRejected() throws IOException {
+        File compressed = compress(random(MB, 7), SparseZstd.DEFAULT_MIN_RUN);
+        File truncated = dir.resolve("truncated" + SparseZstd.EXTENSION).toFile();
+        byte[] bytes = Files.readAllBytes(compressed.toPath());
+        Files.write(truncated.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+
+        assertThrows(IOException.class, () -> SparseZstd.decompress(truncated, dir.resolve("out").toFile()));
+    }
+
+    private File compress(byte[] data, long minRun) throws IOException {
+        File input = write(data);
+        File output = dir.resolve("output" + SparseZstd.EXTENSION).toFile();
+        SparseZstd.compress(input, output, 3, 0, minRun);
+        return output;
+    }
+
+    private byte[] decompress(File compressed) throws IOException {
+        File output = dir.resolve("restored").toFile();
+        SparseZstd.decompress(compressed, output);
+        return Files.readAllBytes(output.toPath());
+    }
+
+    private static byte[] readStream(File compressed) throws IOException {
+        try (InputStream in = SparseZstd.openDecompressing(compressed)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[100_000]; // not a multiple of the block size
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static int runCount(File compressed) throws IOException {
+        try (FileChannel channel = FileChannel.open(compressed.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(footer, channel.size() - FOOTER_SIZE);
+            return footer.getInt(8);
+        }
+    }
+
+    private File corrupt(File source, String name, long offset, int xor) throws IOException {
+        byte[] bytes = Files.readAllBytes(source.toPath());
+        bytes[(int) offset] ^= (byte) xor;
+        File copy = dir.resolve(name + SparseZstd.EXTENSION).toFile();
+        Files.write(copy.toPath(), bytes);
+        return copy;
+    }
+
+    private File write(byte[] data) throws IOException {
+        File input = dir.resolve("input.bin").toFile();
+        Files.write(input.toPath(), data);
+        return input;
+    }
+
+    private static byte[] random(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,120 @@
+package com.universalcompressor.codec;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZstdWindowTest {
+    private static final long MB = 1024 * 1024;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void windowCoversTheInputWithinTheMemoryBudget() {
+        assertEquals(ZstdWindow.MIN_WINDOW_LOG, ZstdWindow.windowLogFor(100, 4096 * MB));
+        assertEquals(20, ZstdWindow.windowLogFor(MB, 4096 * MB));
+        assertEquals(21, ZstdWindow.windowLogFor(MB + 1, 4096 * MB));
+        assertEquals(28, ZstdWindow.windowLogFor(190 * MB, 4096 * MB));
+        assertEquals(ZstdWindow.MAX_WINDOW_LOG, ZstdWindow.windowLogFor(5000 * MB, 8192 * MB));
+        // The window takes at most half of the budget
+        assertEquals(26, ZstdWindow.windowLogFor(190 * MB, 128 * MB));
+    }
+
+    /**
+     * 190MB whose first 20MB repeat 170MB later: only a window beyond zstd's default
+     * 128MB finds the repeat, and only a decoder that raises its limit can read it.
+     */
+    @Test
+    void repeatBeyondTheDefaultWindowIsFoundAndDecoded() throws IOException {
+        long repeat = 20 * MB;
+        long gap = 150 * MB;
+        File input = dir.resolve("input.bin").toFile();
+        byte[] expected;
+        try (DigestOutputStream out = new DigestOutputStream(
+                new BufferedOutputStream(new FileOutputStream(input), 1 << 20), sha256())) {
+            writeRandom(out, repeat, 1);
+            writeRandom(out, gap, 2);
+            writeRandom(out, repeat, 1);
+            out.flush();
+            expected = out.getMessageDigest().digest();
+        }
+        long inputSize = input.length();
+
+        File compressed = dir.resolve("input.bin.zst").toFile();
+        int windowLog;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(input), 1 << 20);
+             ZstdOutputStream out = new ZstdOutputStream(new BufferedOutputStream(new FileOutputStream(compressed), 1 << 20))) {
+            windowLog = ZstdWindow.configure(out, inputSize, 1, 0);
+            copy(in, out);
+        }
+
+        assertEquals(28, windowLog);
+        assertEquals(windowLog, ZstdWindow.readWindowLog(compressed, 0));
+        assertTrue(compressed.length() < inputSize - repeat + 2 * MB,
+            "the repeat is encoded as a match (" + compressed.length() + " bytes)");
+
+        // Stock decoder limit
+        assertThrows(IOException.class, () -> {
+            try (InputStream in = new ZstdInputStream(new FileInputStream(compressed))) {
+                copy(in, OutputStream.nullOutputStream());
+            }
+        });
+
+        try (DigestInputStream in = new DigestInputStream(ZstdWindow.allowWindow(
+                new ZstdInputStream(new BufferedInputStream(new FileInputStream(compressed), 1 << 20)), compressed, 0),
+                sha256())) {
+            copy(in, OutputStream.nullOutputStream());
+            assertArrayEquals(expected, in.getMessageDigest().digest());
+        }
+    }
+
+    @Test
+    void windowIsFoundAfterSkippableFrames() throws IOException {
+        File file = dir.resolve("tagged.zst").toFile();
+        File input = dir.resolve("small.bin").toFile();
+        try (OutputStream out = new FileOutputStream(input)) {
+            writeRandom(out, 3 * MB, 3);
+        }
+        TieredZstd.compress(input, file, 3, TieredZstd.TIER_FAST, 0);
+
+        assertEquals(ZstdWindow.windowLogFor(3 * MB, Long.MAX_VALUE), ZstdWindow.readWindowLog(file, 0));
+    }
+
+    private static void writeRandom(OutputStream out, long length, long seed) throws IOException {
+        Random random = new Random(seed);
+        byte[] buffer = new byte[1 << 20];
+        for (long written = 0; written < length; written += buffer.length) {
+            random.nextBytes(buffer);
+            out.write(buffer, 0, (int) Math.min(buffer.length, length - written));
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[1 << 20];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.universalcompressor.manifest;
+
+import com.universalcompressor.model.ManifestEntry;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AssetManifestTest {
+    private static final String HASH = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void entriesRoundTrip() throws IOException {
+        List<ManifestEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            entries.add(new ManifestEntry("Content/Meshes/mesh" + i + ".fbx", "CompressedAssets/Content/Meshes/mesh" + i + ".fbx.zst",
+                "zstd", 1000L + i, 100L + i, i % 2 == 0 ? HASH : null, 1600000000000L + i));
+        }
+        entries.add(new ManifestEntry("Textures/été.png", "CompressedAssets/Textures/été.png.ucsp",
+            "zstd-sparse", 5, 3, HASH, 42));
+        entries.add(new ManifestEntry("Docs/readme.txt", "Docs/readme.txt.recipe", "recipe", 7, 1, null, 43));
+        File file = manifestFile();
+        AssetManifest.write(file, entries);
+
+        try (AssetManifest manifest = AssetManifest.open(file)) {
+            assertEquals(entries.size(), manifest.size());
+            assertEquals(entries.size(), manifest.entries().size());
+            for (ManifestEntry expected : entries) {
+                ManifestEntry actual = manifest.lookup(expected.getPath());
+                assertNotNull(actual, expected.getPath());
+                assertEquals(expected.getCompressedPath(), actual.getCompressedPath());
+                assertEquals(expected.getOriginalSize(), actual.getOriginalSize());
+                assertEquals(expected.getCompressedSize(), actual.getCompressedSize());
+                assertEquals(expected.getContentHash(), actual.getContentHash());
+                assertEquals(expected.getModifiedTime(), actual.getModifiedTime());
+            }
+            assertEquals("zstd-sparse", manifest.lookup("Textures/été.png").getMethod());
+            assertEquals("chunked", manifest.lookup("Docs/readme.txt").getMethod());
+            assertNull(manifest.lookup("Content/Meshes/missing.fbx"));
+        }
+    }
+
+    @Test
+    void pathsAreNormalized() throws IOException {
+        File file = manifestFile();
+        AssetManifest.write(file, Collections.singletonList(
+            new ManifestEntry(".\\Content\\a.fbx", "CompressedAssets\\Content\\a.fbx.zst", "zstd", 10, 5, null, 1)));
+
+        try (AssetManifest manifest = AssetManifest.open(file)) {
+            ManifestEntry entry = manifest.lookup("Content/a.fbx");
+            assertNotNull(entry);
+            assertEquals("Content/a.fbx", entry.getPath());
+            assertEquals("CompressedAssets/Content/a.fbx.zst", entry.getCompressedPath());
+            assertNotNull(manifest.lookup("./Content/a.fbx"));
+            assertNotNull(manifest.lookup("Content\\a.fbx"));
+        }
+    }
+
+    @Test
+    void unknownSizeIsPreserved() throws IOException {
+        File file = manifestFile();
+        AssetManifest.write(file, Collections.singletonList(
+            new ManifestEntry("a.bin", "a.bin.zst", "zstd", ManifestEntry.UNKNOWN_SIZE, 5, null, 1)));
+
+        try (AssetManifest manifest = AssetManifest.open(file)) {
+            ManifestEntry entry = manifest.lookup("a.bin");
+            assertFalse(entry.isSizeKnown());
+            assertEquals(ManifestEntry.UNKNOWN_SIZE, entry.getOriginalSize());
+            assertFalse(AssetManifest.isUpToDate(dir.resolve("a.bin").toFile(), entry));
+        }
+    }
+
+    @Test
+    void updateUpsertsAndRemoves() throws IOException {
+        File file = manifestFile();
+        AssetManifest.write(file, Arrays.asList(
+            new ManifestEntry("a.bin", "a.bin.zst", "zstd", 1, 1, null, 1),
+            new ManifestEntry("b.bin", "b.bin.zst", "zstd", 2, 2, null, 2)));
+
+        AssetManifest manifest = AssetManifest.open(file);
+        manifest = manifest.update(
+            Arrays.asList(new ManifestEntry("b.bin", "b.bin.xz", "xz", 20, 10, HASH, 3),
+                new ManifestEntry("c.bin", "c.bin.gz", "gzip", 3, 3, null, 4)),
+            Collections.singletonList("a.bin"));
+        try {
+            assertEquals(2, manifest.size());
+            assertNull(manifest.lookup("a.bin"));
+            assertEquals("xz", manifest.lookup("b.bin").getMethod());
+            assertEquals(20, manifest.lookup("b.bin").getOriginalSize());
+            assertEquals("gzip", manifest.lookup("c.bin").getMethod());
+        } finally {
+            manifest.close();
+        }
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    void missingFileIsEmpty() throws IOException {
+        try (AssetManifest manifest = AssetManifest.open(manifestFile())) {
+            assertEquals(0, manifest.size());
+            assertNull(manifest.lookup("a.bin"));
+        }
+    }
+
+    @Test
+    void closedManifestRejectsLookups() throws IOException {
+        File file = manifestFile();
+        AssetManifest.write(file, Collections.emptyList());
+        AssetManifest manifest = AssetManifest.open(file);
+        manifest.close();
+        assertThrows(IllegalStateException.class, () -> manifest.lookup("a.bin"));
+    }
+
+    @Test
+    void corruptManifestIsRejected() throws IOException {
+        File file = manifestFile();
+        AssetManifest.write(file, Arrays.asList(
+            new ManifestEntry("a.bin", "a.bin.zst", "zstd", 1, 1, HASH, 1),
+            new ManifestEntry("b.bin", "b.bin.zst", "zstd", 2, 2, null, 2)));
+        byte[] good = Files.readAllBytes(file.toPath());
+
+        // Magic, version, count and string table offset in the header; then the checksummed body
+        for (int offset : new int[] {0, 4, 8, 16, 40, good.length - 1}) {
+            byte[] bad = good.clone();
+            bad[offset] ^= 0x01;
+            Files.write(file.toPath(), bad);
+            assertThrows(IOException.class, () -> AssetManifest.open(file), "corruption at offset " + offset);
+        }
+
+        Files.write(file.toPath(), Arrays.copyOf(good, good.length - 3));
+        assertThrows(IOException.class, () -> AssetManifest.open(file), "truncated manifest");
+
+        Files.write(file.toPath(), Arrays.copyOf(good, 20));
+        assertThrows(IOException.class, () -> AssetManifest.open(file), "short manifest");
+    }
+
+    private File manifestFile() {
+        return dir.resolve(AssetManifest.DEFAULT_FILE).toFile();
+    }
+}
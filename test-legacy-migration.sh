@@ -0,0 +1,69 @@
+#!/bin/bash
+
+# End-to-end check of migrating a repository that still uses the legacy
+# .compressed_files list. Builds a scratch repository with one asset whose original is
+# still present and one whose original was already removed, runs the same migration the
+# pre-commit hook runs, then the post-checkout hook, and checks that both working files
+# come back with their original content on the first and on a repeated checkout.
+
+# Enable strict error handling
+set -euo pipefail
+
+PROJECT_ROOT="$(cd "$(dirname "${BASH_SOURCE[0]}")" && pwd)"
+COMPRESSOR="$PROJECT_ROOT/target/universal-compressor-1.0-SNAPSHOT.jar"
+
+# Colors for output
+RED='\033[0;31m'
+GREEN='\033[0;32m'
+NC='\033[0m' # No Color
+
+info() { echo -e "${GREEN}[INFO]${NC} $1"; }
+fail() { echo -e "${RED}[FAIL]${NC} $1" >&2; exit 1; }
+
+if [ ! -f "$COMPRESSOR" ]; then
+    info "Building the project..."
+    (cd "$PROJECT_ROOT" && mvn -q clean package) || fail "Failed to build the project"
+fi
+
+REPO=$(mktemp -d)
+trap 'rm -rf "$REPO"' EXIT
+cd "$REPO"
+git init -q
+mkdir -p target Content
+ln -s "$COMPRESSOR" target/
+cp "$PROJECT_ROOT/compression-config.json" .
+
+# Two assets in the legacy layout: compressed next to the original, listed in .compressed_files
+head -c 3000000 /dev/urandom > "$REPO/expected_kept"
+yes "legacy asset line" | head -c 5000000 > "$REPO/expected_gone"
+cp expected_kept Content/Kept.uasset
+cp expected_gone Content/Gone.uasset
+for asset in Kept Gone; do
+    java -jar "$COMPRESSOR" compress "Content/$asset.uasset" "Content/$asset.uasset.zstd" zstd >/dev/null 2>&1 \
+        || fail "Could not compress Content/$asset.uasset"
+    echo "Content/$asset.uasset|Content/$asset.uasset.zstd|zstd" >> .compressed_files
+done
+rm Content/Gone.uasset
+
+# The migration step of the pre-commit hook
+java -jar "$COMPRESSOR" manifest-update .compressed_manifest .compressed_files >/dev/null 2>&1 \
+    || fail "manifest-update failed"
+rm .compressed_files
+stale=$(java -jar "$COMPRESSOR" manifest-stale .compressed_manifest 2>/dev/null)
+[ "$stale" = "Content/Gone.uasset|Content/Gone.uasset.zstd|zstd" ] \
+    || fail "Expected only the missing original to be stale, got: $stale"
+info "Migrated .compressed_files; the entry without its original is stale"
+
+# A full checkout, twice: the second run must not fail on the entry of unknown size
+for run in first second; do
+    rm -f Content/Gone.uasset
+    bash "$PROJECT_ROOT/git-hooks/post-checkout" HEAD HEAD 1 >/dev/null 2>&1 || fail "post-checkout failed ($run run)"
+    cmp -s expected_gone Content/Gone.uasset || fail "Content/Gone.uasset was not restored ($run run)"
+    cmp -s expected_kept Content/Kept.uasset || fail "Content/Kept.uasset changed ($run run)"
+    info "Restored Content/Gone.uasset on the $run checkout"
+done
+
+# The hook only warns; the checkout command itself must report success
+java -jar "$COMPRESSOR" checkout .compressed_manifest >/dev/null 2>&1 || fail "checkout reported failures"
+
+info "Legacy migration check passed"